@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDAbstractPattern;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ResourceCache} that keeps at most a given number of (estimated) bytes of XObjects and of fonts,
+ * evicting the least recently used first.  PDFBox's default cache holds on to every resource for the lifetime
+ * of the document, so the heap grows with every page of a large document.  With this cache it stays flat,
+ * while resources shared by many pages (fonts, logos) are still loaded once.
+ * <p>
+ * Colour spaces, graphics states, shadings, patterns and property lists are small, they're kept by count.
+ * A resource larger than its limit on its own isn't cached at all.
+ * <p>
+ * Install with {@link RedactionOptions#setResourceCache(BoundedResourceCache)}.  Thread-safe.
+ */
+public class BoundedResourceCache implements ResourceCache {
+
+    // the number of small resources (colour spaces etc.) kept
+    static final int MAX_OTHER_ENTRIES = 1024;
+    // parsed font tables and glyph caches compared to the embedded font file
+    static final int FONT_FACTOR = 4;
+    // fixed cost of a font object (metrics, encoding, unicode map)
+    static final long FONT_OVERHEAD = 32 * 1024;
+
+    private final long maxXObjectBytes;
+    private final long maxFontBytes;
+
+    private final Cache xObjects;
+    private final Cache fonts;
+    private final Cache others;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxXObjectBytes the estimated number of bytes of images and forms kept
+     * @param maxFontBytes the estimated number of bytes of fonts kept
+     */
+    public BoundedResourceCache(long maxXObjectBytes, long maxFontBytes) {
+        this.maxXObjectBytes = maxXObjectBytes;
+        this.maxFontBytes = maxFontBytes;
+        this.xObjects = new Cache(maxXObjectBytes);
+        this.fonts = new Cache(maxFontBytes);
+        this.others = new Cache(MAX_OTHER_ENTRIES);
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getXObjectBytes() { return xObjects.bytes; }
+    public synchronized long getFontBytes() { return fonts.bytes; }
+    public long getMaxXObjectBytes() { return maxXObjectBytes; }
+    public long getMaxFontBytes() { return maxFontBytes; }
+
+    /**
+     * @return the fraction of lookups that were found in the cache, 0 if there were none
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * empty the cache, the statistics are kept
+     */
+    public synchronized void clear() {
+        xObjects.clear();
+        fonts.clear();
+        others.clear();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (this) {
+            return hits + " hits, " + misses + " misses, " + evictions + " evictions, " +
+                    xObjects.bytes + " bytes of xobjects, " + fonts.bytes + " bytes of fonts";
+        }
+    }
+
+    // fonts, by estimated size
+
+    @Override
+    public PDFont getFont(COSObject indirect) { return (PDFont) get(fonts, indirect); }
+    @Override
+    public void put(COSObject indirect, PDFont font) { put(fonts, indirect, font, estimateFont(font)); }
+    @Override
+    public PDFont removeFont(COSObject indirect) { return (PDFont) remove(fonts, indirect); }
+
+    // images and forms, by estimated size
+
+    @Override
+    public PDXObject getXObject(COSObject indirect) { return (PDXObject) get(xObjects, indirect); }
+    @Override
+    public void put(COSObject indirect, PDXObject xobject) { put(xObjects, indirect, xobject, estimateXObject(xobject)); }
+    @Override
+    public PDXObject removeXObject(COSObject indirect) { return (PDXObject) remove(xObjects, indirect); }
+
+    // everything else, by count
+
+    @Override
+    public PDColorSpace getColorSpace(COSObject indirect) { return (PDColorSpace) get(others, indirect); }
+    @Override
+    public void put(COSObject indirect, PDColorSpace colorSpace) { put(others, indirect, colorSpace, 1); }
+    @Override
+    public PDColorSpace removeColorSpace(COSObject indirect) { return (PDColorSpace) remove(others, indirect); }
+
+    @Override
+    public PDExtendedGraphicsState getExtGState(COSObject indirect) { return (PDExtendedGraphicsState) get(others, indirect); }
+    @Override
+    public void put(COSObject indirect, PDExtendedGraphicsState extGState) { put(others, indirect, extGState, 1); }
+    @Override
+    public PDExtendedGraphicsState removeExtState(COSObject indirect) { return (PDExtendedGraphicsState) remove(others, indirect); }
+
+    @Override
+    public PDShading getShading(COSObject indirect) { return (PDShading) get(others, indirect); }
+    @Override
+    public void put(COSObject indirect, PDShading shading) { put(others, indirect, shading, 1); }
+    @Override
+    public PDShading removeShading(COSObject indirect) { return (PDShading) remove(others, indirect); }
+
+    @Override
+    public PDAbstractPattern getPattern(COSObject indirect) { return (PDAbstractPattern) get(others, indirect); }
+    @Override
+    public void put(COSObject indirect, PDAbstractPattern pattern) { put(others, indirect, pattern, 1); }
+    @Override
+    public PDAbstractPattern removePattern(COSObject indirect) { return (PDAbstractPattern) remove(others, indirect); }
+
+    @Override
+    public PDPropertyList getProperties(COSObject indirect) { return (PDPropertyList) get(others, indirect); }
+    @Override
+    public void put(COSObject indirect, PDPropertyList propertyList) { put(others, indirect, propertyList, 1); }
+    @Override
+    public PDPropertyList removeProperties(COSObject indirect) { return (PDPropertyList) remove(others, indirect); }
+
+    /**
+     * The size of a font: its embedded font file, parsed, or just the fixed overhead for fonts that aren't
+     * embedded (the standard 14 fonts share their metrics across documents).
+     */
+    static long estimateFont(PDFont font) {
+        long size = FONT_OVERHEAD;
+        PDFontDescriptor descriptor = font != null ? font.getFontDescriptor() : null;
+        if (descriptor != null) {
+            PDStream fontFile = descriptor.getFontFile2();
+            if (fontFile == null) fontFile = descriptor.getFontFile3();
+            if (fontFile == null) fontFile = descriptor.getFontFile();
+            if (fontFile != null) {
+                long length = fontFile.getCOSObject().getLong(COSName.LENGTH1, fontFile.getCOSObject().getLength());
+                size += Math.max(0, length) * FONT_FACTOR;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The size of an XObject: the decoded image for images (see {@link MemoryEstimator#estimateImage}),
+     * the content stream for forms.
+     */
+    static long estimateXObject(PDXObject xobject) {
+        if (xobject == null) return 0;
+        if (xobject instanceof PDImageXObject) {
+            return MemoryEstimator.estimateImage(xobject.getCOSObject());
+        }
+        return Math.max(0, xobject.getCOSObject().getLength());
+    }
+
+    private synchronized Object get(Cache cache, COSObject indirect) {
+        Cache.Entry entry = cache.get(indirect);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private synchronized void put(Cache cache, COSObject indirect, Object value, long size) {
+        if (indirect == null || value == null) return;
+        remove(cache, indirect);
+        if (size > cache.limit) return; // would evict everything else and itself
+        cache.put(indirect, new Cache.Entry(value, size));
+        cache.bytes += size;
+        // evict the least recently used until we're back under the limit
+        Iterator<Map.Entry<COSObject, Cache.Entry>> iterator = cache.entrySet().iterator();
+        while (cache.bytes > cache.limit && iterator.hasNext()) {
+            cache.bytes -= iterator.next().getValue().size;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized Object remove(Cache cache, COSObject indirect) {
+        Cache.Entry entry = cache.remove(indirect);
+        if (entry == null) return null;
+        cache.bytes -= entry.size;
+        return entry.value;
+    }
+
+    /**
+     * an LRU map keeping track of the size of its entries
+     */
+    private static class Cache extends LinkedHashMap<COSObject, Cache.Entry> {
+
+        private static class Entry {
+            private final Object value;
+            private final long size;
+
+            Entry(Object value, long size) {
+                this.value = value;
+                this.size = size;
+            }
+        }
+
+        private final long limit;
+        private long bytes = 0;
+
+        Cache(long limit) {
+            super(16, 0.75f, true);
+            this.limit = limit;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            bytes = 0;
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import java.util.Iterator;
+
+/**
+ * Internal accounting of a {@link RedactionBudget} and {@link CancellationToken} for one document.
+ * The check methods throw a {@link BudgetExceededException} as soon as a limit is crossed.
+ */
+class BudgetTracker {
+
+    // check the clock every this many tokens, nanoTime() isn't free
+    private static final int TOKEN_CHECK_INTERVAL = 64;
+
+    private final RedactionBudget budget;
+    private final CancellationToken cancellationToken;
+    private final long deadline; // System.nanoTime() deadline, or 0 for none
+
+    private long decodedPixels = 0;
+    private long contentStreamBytes = 0;
+    private int tokenCounter = 0;
+
+    // constructor
+    BudgetTracker(RedactionBudget budget, CancellationToken cancellationToken) {
+        this.budget = budget;
+        this.cancellationToken = cancellationToken;
+        if (budget != null && budget.getMaxWallTimeMillis() > 0) {
+            this.deadline = System.nanoTime() + budget.getMaxWallTimeMillis() * 1_000_000L;
+        } else {
+            this.deadline = 0;
+        }
+    }
+
+    /**
+     * reject documents with too many pages before any work is done
+     */
+    void checkPageCount(int pageCount) {
+        if (budget != null && budget.getMaxPages() > 0 && pageCount > budget.getMaxPages()) {
+            throw new BudgetExceededException("document has " + pageCount + " pages, the limit is " + budget.getMaxPages());
+        }
+    }
+
+    /**
+     * called at the start of each page, accounts for the page's content stream size
+     */
+    void checkPage(PDPage page) {
+        check();
+        if (budget != null && budget.getMaxContentStreamBytes() > 0 && page != null) {
+            contentStreamBytes += contentStreamLength(page);
+            if (contentStreamBytes > budget.getMaxContentStreamBytes()) {
+                throw new BudgetExceededException("content-stream limit of " + budget.getMaxContentStreamBytes() + " bytes exceeded");
+            }
+        }
+    }
+
+    /**
+     * called for every content stream operator, only looks at the clock every few calls
+     */
+    void checkToken() {
+        if (++tokenCounter >= TOKEN_CHECK_INTERVAL) {
+            tokenCounter = 0;
+            check();
+        }
+    }
+
+    /**
+     * called before an image is decoded
+     *
+     * @param pixels the number of pixels (width x height) about to be decoded
+     */
+    void checkImage(long pixels) {
+        check();
+        if (budget != null && budget.getMaxDecodedPixels() > 0) {
+            decodedPixels += pixels;
+            if (decodedPixels > budget.getMaxDecodedPixels()) {
+                throw new BudgetExceededException("decoded pixel limit of " + budget.getMaxDecodedPixels() + " exceeded");
+            }
+        }
+    }
+
+    /**
+     * check cancellation and elapsed time
+     */
+    void check() {
+        if (cancellationToken != null && cancellationToken.isCancelled()) {
+            throw new BudgetExceededException("cancelled");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("wall time limit of " + budget.getMaxWallTimeMillis() + " ms exceeded");
+        }
+    }
+
+    /**
+     * @return the encoded length of all the content streams of a page
+     */
+    private static long contentStreamLength(PDPage page) {
+        long length = 0;
+        try {
+            Iterator<PDStream> streams = page.getContentStreams();
+            while (streams.hasNext()) {
+                length += streams.next().getCOSObject().getLength();
+            }
+        } catch (Exception e) {
+            // unreadable contents are dealt with (or not) by the stages themselves
+        }
+        return length;
+    }
+
+    /**
+     * Unchecked so that it passes through the PDFBox stream engines (which swallow some IOExceptions).
+     */
+    static class BudgetExceededException extends RuntimeException {
+        BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+/**
+ * A flag a caller can raise from any thread to ask a running redaction to stop.
+ * The redaction checks the flag at page, token and image boundaries.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled = false;
+
+    /**
+     * request cancellation of any redaction using this token
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Replays a corpus of PDF files through the redactor, to compare releases on real documents rather than
+ * micro-benchmarks.  Every document is loaded, redacted ({@link PdfRedaction#redact}, which locates the words
+ * itself) and saved to memory, each stage timed on its own, so the totals are what a production redaction costs.
+ * A locate-only run instead loads and locates the words ({@link PdfRedaction#getRedactionAreas}), to time text
+ * extraction on its own and count the boxes.  Documents run concurrently on a fixed number of threads; a document
+ * that fails, even with an Error, is recorded as failed and the run goes on.
+ * <p>
+ * The report has documents and pages per second, p50/p95/p99 latency, the peak heap, bytes in and out and the
+ * time per stage, and is written as CSV (a row per document) and JSON (the summary).
+ * <pre>
+ *     CorpusBenchmark &lt;pdf directory&gt; &lt;term list&gt; [threads] [warm-up documents] [csv file] [json file] [locate]
+ * </pre>
+ */
+public class CorpusBenchmark {
+
+    public enum Stage { LOAD, LOCATE, REDACT, SAVE }
+
+    /**
+     * the measurements of one document
+     */
+    public static class DocumentTiming {
+        private final Path file;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private long bytesIn = 0;
+        private long bytesOut = 0;
+        private int pages = 0;
+        private int boxes = 0; // only counted by locate-only runs
+        private final int[] pageKinds = new int[PageClassifier.Kind.values().length];
+        private int textPassesSkipped = 0;
+        private int imagePassesSkipped = 0;
+        private String status = "OK"; // the redaction status, or the error
+
+        DocumentTiming(Path file) {
+            this.file = file;
+        }
+
+        public Path getFile() { return file; }
+        public long getStageNanos(Stage stage) { return stageNanos[stage.ordinal()]; }
+        public long getTotalNanos() { return Arrays.stream(stageNanos).sum(); }
+        public long getBytesIn() { return bytesIn; }
+        public long getBytesOut() { return bytesOut; }
+        public int getPages() { return pages; }
+        public int getBoxes() { return boxes; }
+        public int getPages(PageClassifier.Kind kind) { return pageKinds[kind.ordinal()]; }
+        public int getTextPassesSkipped() { return textPassesSkipped; }
+        public int getImagePassesSkipped() { return imagePassesSkipped; }
+        public String getStatus() { return status; }
+        public boolean isFailed() { return !"OK".equals(status); }
+    }
+
+    /**
+     * the measurements of a whole run
+     */
+    public static class Report {
+        private final List<DocumentTiming> documents;
+        private final long wallNanos;
+        private final long peakHeapBytes;
+        private final int threads;
+
+        Report(List<DocumentTiming> documents, long wallNanos, long peakHeapBytes, int threads) {
+            this.documents = documents;
+            this.wallNanos = wallNanos;
+            this.peakHeapBytes = peakHeapBytes;
+            this.threads = threads;
+        }
+
+        public List<DocumentTiming> getDocuments() { return documents; }
+        public long getWallNanos() { return wallNanos; }
+        public long getPeakHeapBytes() { return peakHeapBytes; }
+        public int getThreads() { return threads; }
+
+        public int getPages() { return documents.stream().mapToInt(DocumentTiming::getPages).sum(); }
+        public long getBytesIn() { return documents.stream().mapToLong(DocumentTiming::getBytesIn).sum(); }
+        public long getBytesOut() { return documents.stream().mapToLong(DocumentTiming::getBytesOut).sum(); }
+        public int getPages(PageClassifier.Kind kind) { return documents.stream().mapToInt(d -> d.getPages(kind)).sum(); }
+        public int getTextPassesSkipped() { return documents.stream().mapToInt(DocumentTiming::getTextPassesSkipped).sum(); }
+        public int getImagePassesSkipped() { return documents.stream().mapToInt(DocumentTiming::getImagePassesSkipped).sum(); }
+        public long getFailures() { return documents.stream().filter(DocumentTiming::isFailed).count(); }
+
+        public double getDocumentsPerSecond() { return documents.size() / seconds(wallNanos); }
+        public double getPagesPerSecond() { return getPages() / seconds(wallNanos); }
+
+        /**
+         * @param percentile e.g. 95
+         * @return the latency of a whole document (all stages) at that percentile, in milliseconds
+         */
+        public double getLatencyMillis(double percentile) {
+            return millis(percentile(documents.stream().mapToLong(DocumentTiming::getTotalNanos).toArray(), percentile));
+        }
+
+        /**
+         * @param stage a stage
+         * @param percentile e.g. 50
+         * @return the time of the stage at that percentile, in milliseconds
+         */
+        public double getStageMillis(Stage stage, double percentile) {
+            return millis(percentile(documents.stream().mapToLong(d -> d.getStageNanos(stage)).toArray(), percentile));
+        }
+
+        /**
+         * @return a header and a row per document
+         */
+        public String toCsv() {
+            StringBuilder sb = new StringBuilder("file,status,pages,boxes,bytes_in,bytes_out,total_ms");
+            for (Stage stage : Stage.values()) {
+                sb.append(',').append(stage.name().toLowerCase(Locale.ROOT)).append("_ms");
+            }
+            sb.append('\n');
+            for (DocumentTiming document : documents) {
+                sb.append(csvField(document.file.toString())).append(',').append(csvField(document.status)).append(',')
+                        .append(document.pages).append(',').append(document.boxes).append(',')
+                        .append(document.bytesIn).append(',').append(document.bytesOut).append(',')
+                        .append(format(millis(document.getTotalNanos())));
+                for (Stage stage : Stage.values()) {
+                    sb.append(',').append(format(millis(document.getStageNanos(stage))));
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return the summary as a JSON object
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{\n");
+            sb.append("  \"documents\": ").append(documents.size()).append(",\n");
+            sb.append("  \"failures\": ").append(getFailures()).append(",\n");
+            sb.append("  \"pages\": ").append(getPages()).append(",\n");
+            sb.append("  \"page_kinds\": {");
+            PageClassifier.Kind[] kinds = PageClassifier.Kind.values();
+            for (int i = 0; i < kinds.length; i++) {
+                sb.append(i > 0 ? ", " : "").append('"').append(kinds[i].name().toLowerCase(Locale.ROOT))
+                        .append("\": ").append(getPages(kinds[i]));
+            }
+            sb.append("},\n");
+            sb.append("  \"text_passes_skipped\": ").append(getTextPassesSkipped()).append(",\n");
+            sb.append("  \"image_passes_skipped\": ").append(getImagePassesSkipped()).append(",\n");
+            sb.append("  \"threads\": ").append(threads).append(",\n");
+            sb.append("  \"wall_ms\": ").append(format(millis(wallNanos))).append(",\n");
+            sb.append("  \"documents_per_second\": ").append(format(getDocumentsPerSecond())).append(",\n");
+            sb.append("  \"pages_per_second\": ").append(format(getPagesPerSecond())).append(",\n");
+            sb.append("  \"latency_ms\": {\"p50\": ").append(format(getLatencyMillis(50)))
+                    .append(", \"p95\": ").append(format(getLatencyMillis(95)))
+                    .append(", \"p99\": ").append(format(getLatencyMillis(99))).append("},\n");
+            sb.append("  \"stages_ms\": {");
+            Stage[] stages = Stage.values();
+            for (int i = 0; i < stages.length; i++) {
+                sb.append(i > 0 ? ", " : "").append('"').append(stages[i].name().toLowerCase(Locale.ROOT))
+                        .append("\": {\"p50\": ").append(format(getStageMillis(stages[i], 50)))
+                        .append(", \"p95\": ").append(format(getStageMillis(stages[i], 95))).append('}');
+            }
+            sb.append("},\n");
+            sb.append("  \"peak_heap_bytes\": ").append(peakHeapBytes).append(",\n");
+            sb.append("  \"bytes_in\": ").append(getBytesIn()).append(",\n");
+            sb.append("  \"bytes_out\": ").append(getBytesOut()).append("\n");
+            sb.append("}\n");
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d documents (%d failed), %d pages in %.1f s: %.2f documents/s, %.2f pages/s, " +
+                            "latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, peak heap %d MB",
+                    documents.size(), getFailures(), getPages(), seconds(wallNanos), getDocumentsPerSecond(),
+                    getPagesPerSecond(), getLatencyMillis(50), getLatencyMillis(95), getLatencyMillis(99),
+                    peakHeapBytes / (1024 * 1024));
+        }
+    }
+
+    private final PdfRedaction redaction = new PdfRedaction();
+    private final int threads;
+    private final int warmUpDocuments;
+    private final boolean locateOnly;
+
+    /**
+     * @param threads the number of documents redacted at the same time
+     * @param warmUpDocuments the number of documents redacted before measuring, so the JIT is warm
+     */
+    public CorpusBenchmark(int threads, int warmUpDocuments) {
+        this(threads, warmUpDocuments, false);
+    }
+
+    /**
+     * @param threads the number of documents processed at the same time
+     * @param warmUpDocuments the number of documents processed before measuring, so the JIT is warm
+     * @param locateOnly if true only load and locate (the LOCATE stage, and the boxes), nothing is redacted or
+     *                   saved; if false load, redact and save (LOCATE is 0)
+     */
+    public CorpusBenchmark(int threads, int warmUpDocuments, boolean locateOnly) {
+        this.threads = Math.max(1, threads);
+        this.warmUpDocuments = Math.max(0, warmUpDocuments);
+        this.locateOnly = locateOnly;
+    }
+
+    /**
+     * Replay a corpus.
+     *
+     * @param files the PDF files
+     * @param words the words to redact
+     * @param options optional settings, shared by all documents (don't set a resource cache, that's one per document)
+     * @return the measurements
+     * @throws IOException if interrupted
+     */
+    public Report run(List<Path> files, List<String> words, RedactionOptions options) throws IOException {
+        for (int i = 0; i < Math.min(warmUpDocuments, files.size()); i++) {
+            process(files.get(i), words, options);
+        }
+
+        // the peak of each heap pool from here on, their sum is an upper bound of the peak heap
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<DocumentTiming> timings = new ArrayList<>(files.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DocumentTiming>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> process(file, words, options)));
+            }
+            for (Future<DocumentTiming> future : futures) {
+                timings.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("benchmark interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            if (pool.getPeakUsage() != null) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return new Report(timings, wallNanos, peakHeap, threads);
+    }
+
+    /**
+     * load, redact and save one document (or load and locate), a failure is recorded in its timing
+     */
+    private DocumentTiming process(Path file, List<String> words, RedactionOptions options) {
+        DocumentTiming timing = new DocumentTiming(file);
+        try {
+            long t0 = System.nanoTime();
+            byte[] bytes = Files.readAllBytes(file);
+            timing.bytesIn = bytes.length;
+            try (PDDocument document = Loader.loadPDF(bytes)) {
+                long t1 = System.nanoTime();
+                timing.stageNanos[Stage.LOAD.ordinal()] = t1 - t0;
+                timing.pages = document.getNumberOfPages();
+
+                if (locateOnly) {
+                    // redact locates the words itself, timing both would count the extraction twice
+                    timing.boxes = redaction.getRedactionAreas(document, words, options != null ? options.getDictionary() : null).size();
+                    timing.stageNanos[Stage.LOCATE.ordinal()] = System.nanoTime() - t1;
+                    return timing;
+                }
+
+                RedactionResult result = redaction.redact(document, words, null, false, options);
+                long t3 = System.nanoTime();
+                timing.stageNanos[Stage.REDACT.ordinal()] = t3 - t1;
+                if (!result.isComplete()) timing.status = result.getOutcome().name();
+                for (PageClassifier.Kind kind : PageClassifier.Kind.values()) {
+                    timing.pageKinds[kind.ordinal()] = result.getPages(kind);
+                }
+                timing.textPassesSkipped = result.getTextPassesSkipped();
+                timing.imagePassesSkipped = result.getImagePassesSkipped();
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+                document.save(out);
+                timing.bytesOut = out.size();
+                timing.stageNanos[Stage.SAVE.ordinal()] = System.nanoTime() - t3;
+            }
+        } catch (Throwable ex) {
+            // an Error (e.g. out of memory on a large scan) fails this document, not the run
+            timing.status = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+        }
+        return timing;
+    }
+
+    /**
+     * @return the value at a percentile (nearest rank), 0 if there are none
+     */
+    static long percentile(long[] values, double percentile) {
+        if (values.length == 0) return 0;
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double seconds(long nanos) {
+        return Math.max(1, nanos) / 1_000_000_000.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String csvField(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * replay a directory of PDF files from the command line, run with {@code -Djava.awt.headless=true} on
+     * machines without a display
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CorpusBenchmark <pdf directory> <term list, one per line> [threads] [warm-up documents] [csv file] [json file] [locate]");
+            System.exit(1);
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(Path.of(args[0]))) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"))
+                    .sorted()
+                    .toList();
+        }
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) words.add(line.trim());
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int warmUp = args.length > 3 ? Integer.parseInt(args[3]) : Math.min(10, files.size());
+
+        boolean locateOnly = args.length > 6 && "locate".equalsIgnoreCase(args[6]);
+
+        Report report = new CorpusBenchmark(threads, warmUp, locateOnly).run(files, words, new RedactionOptions());
+        System.out.println(report);
+        if (args.length > 4) Files.writeString(Path.of(args[4]), report.toCsv(), StandardCharsets.UTF_8);
+        if (args.length > 5) Files.writeString(Path.of(args[5]), report.toJson(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,593 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The text of a document, extracted once and kept in a compact local file, for documents that are redacted many
+ * times with changing word lists.  Later lookups are answered from the index without parsing the document, and a
+ * redaction with the index ({@link RedactionOptions#setDocumentIndex(DocumentIndex)}) only touches the pages with
+ * hits.  Indexes are keyed by a SHA-256 hash of the document's bytes, and each page also keeps its crop box,
+ * rotation, content length and a SHA-256 digest of the encoded bytes of its content streams and of the forms it
+ * uses: a page whose values don't match those of the document it's used on (another document, even one made from
+ * the same template, or this one changed since) isn't answered from the index, its text is extracted again.
+ * <p>
+ * Per page the index has the folded text (see {@link TextIndex}) of every line, in reading order, mapped back to
+ * the glyphs it came from, and the few numbers needed to box those glyphs.  An inverted index maps every token
+ * (a run of letters, digits and underscores, in lowercase) to where it occurs.  A word that is one token is answered from the
+ * inverted index alone; other words (phrases, punctuation) are matched with the same pattern as
+ * {@link WordFinder} on just the lines holding all their tokens, so results are the same as extracting the text
+ * again.  Terms of a {@link TermDictionary} are matched on the stored lines.
+ */
+public class DocumentIndex {
+
+    private static final int MAGIC = 0x50444958; // PDIX
+    private static final int VERSION = 3;
+    private static final String EXTENSION = ".pdx";
+
+    /**
+     * the stored text of one page
+     */
+    private static class Page {
+        private final float[] cropBox; // lower left x, y, upper right x, y: with the rotation and content
+        private final int pageRotation; // what the page must still have for the index to be used on it
+        private final long contentLength;
+        private final byte[] contentDigest; // of the encoded content and forms, null if they couldn't be read
+        private final float cropWidth;
+        private final float cropHeight;
+        private final int rotation;
+        private final float[] geometry; // per glyph: left, baseline (up), right, height
+        private final String[] lines; // folded text of each line
+        private final int[][] firstGlyph; // per line, per folded character: the first glyph it came from
+        private final int[][] lastGlyph; // and the last
+
+        Page(float[] cropBox, int pageRotation, long contentLength, byte[] contentDigest, float cropWidth, float cropHeight,
+             int rotation, float[] geometry, String[] lines, int[][] firstGlyph, int[][] lastGlyph) {
+            this.cropBox = cropBox;
+            this.pageRotation = pageRotation;
+            this.contentLength = contentLength;
+            this.contentDigest = contentDigest;
+            this.cropWidth = cropWidth;
+            this.cropHeight = cropHeight;
+            this.rotation = rotation;
+            this.geometry = geometry;
+            this.lines = lines;
+            this.firstGlyph = firstGlyph;
+            this.lastGlyph = lastGlyph;
+        }
+
+        boolean matches(PDPage page) {
+            return Arrays.equals(cropBox, cropBox(page)) && pageRotation == page.getRotation()
+                    && contentLength == PageClassifier.contentLength(page)
+                    && contentDigest != null && Arrays.equals(contentDigest, contentDigest(page));
+        }
+
+        Rectangle2D box(int line, int start, int end) {
+            int first = firstGlyph[line][start];
+            int last = lastGlyph[line][end - 1];
+            return GlyphIndex.box(geometry[4 * first], geometry[4 * first + 1], geometry[4 * last + 2],
+                    geometry[4 * first + 3], cropWidth, cropHeight, rotation);
+        }
+    }
+
+    private final String hash;
+    private final Page[] pages; // by 0-based page index
+    private final Map<String, int[]> postings; // token -> (page, line, start, end) * n, in page and line order
+
+    // constructor
+    private DocumentIndex(String hash, Page[] pages, Map<String, int[]> postings) {
+        this.hash = hash;
+        this.pages = pages;
+        this.postings = postings;
+    }
+
+    /**
+     * The index of a document from a directory of indexes, built (and stored) if it isn't there yet.
+     *
+     * @param directory where the indexes are kept
+     * @param hash the hash of the document's bytes, see {@link #hash(Path)}
+     * @param document the document, only read if there's no index yet
+     * @return the index
+     * @throws IOException if the document can't be read or the index can't be written
+     */
+    public static DocumentIndex forDocument(Path directory, String hash, PDDocument document) throws IOException {
+        Path file = directory.resolve(hash + EXTENSION);
+        if (Files.isRegularFile(file)) {
+            try {
+                DocumentIndex index = load(file);
+                if (index.hash.equals(hash) && index.matches(document)) return index;
+            } catch (IOException ex) {
+                // unreadable or of another version: build it again
+            }
+        }
+        DocumentIndex index = build(document, hash);
+        index.save(file);
+        return index;
+    }
+
+    /**
+     * Extract and index the text of a document.
+     *
+     * @param document the document
+     * @param hash the hash of the document's bytes
+     * @return the index
+     * @throws IOException if the document can't be read
+     */
+    public static DocumentIndex build(PDDocument document, String hash) throws IOException {
+        int numPages = document.getNumberOfPages();
+        Page[] pages = new Page[numPages];
+        Map<String, PostingList> postingLists = new HashMap<>();
+
+        for (int i = 0; i < numPages; i++) {
+            final int pageIndex = i;
+            PDPage page = document.getPage(i);
+            float[] cropBox = cropBox(page);
+            int pageRotation = page.getRotation();
+            long contentLength = PageClassifier.contentLength(page);
+            byte[] contentDigest = contentDigest(page);
+            pages[i] = new Page(cropBox, pageRotation, contentLength, contentDigest, page.getCropBox().getWidth(), page.getCropBox().getHeight(),
+                    page.getRotation(), new float[0], new String[0], new int[0][], new int[0][]);
+            WordFinder finder = new WordFinder(page, null);
+            finder.setPageListener((glyphs, cropWidth, cropHeight, rotation) -> {
+                List<String> lines = new ArrayList<>();
+                List<int[]> firstGlyphs = new ArrayList<>();
+                List<int[]> lastGlyphs = new ArrayList<>();
+                glyphs.lines(line -> {
+                    TextIndex index = TextIndex.ofUnits(line.text, line.unitStart, line.units);
+                    String text = index.getText();
+                    int[] first = new int[text.length()];
+                    int[] last = new int[text.length()];
+                    for (int c = 0; c < text.length(); c++) {
+                        first[c] = line.glyph[index.sourceStart(c)];
+                        last[c] = line.glyph[index.sourceEnd(c + 1) - 1];
+                    }
+                    addTokens(postingLists, text, pageIndex, lines.size());
+                    lines.add(text);
+                    firstGlyphs.add(first);
+                    lastGlyphs.add(last);
+                });
+                pages[pageIndex] = new Page(cropBox, pageRotation, contentLength, contentDigest, cropWidth, cropHeight, rotation, glyphs.geometry(),
+                        lines.toArray(new String[0]), firstGlyphs.toArray(new int[0][]), lastGlyphs.toArray(new int[0][]));
+            });
+            finder.setStartPage(i + 1);
+            finder.setEndPage(i + 1);
+            finder.getText(document);
+        }
+
+        Map<String, int[]> postings = new HashMap<>(postingLists.size() * 2);
+        for (Map.Entry<String, PostingList> entry : postingLists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new DocumentIndex(hash, pages, postings);
+    }
+
+    /**
+     * @param document a document
+     * @return true if the index can be used on every page of the document: same number of pages, and each with the
+     *         crop box, rotation and content (with its forms) it was indexed with
+     */
+    public boolean matches(PDDocument document) {
+        if (document.getNumberOfPages() != pages.length) return false;
+        for (int i = 0; i < pages.length; i++) {
+            if (!pages[i].matches(document.getPage(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param pageNum the 1-based page number
+     * @param page the page of the document with that number
+     * @return true if the page has the crop box, rotation and content (with its forms) it was indexed with, so what
+     *         {@link #find(int, List, TermDictionary)} answers for it is still true
+     */
+    public boolean matches(int pageNum, PDPage page) {
+        return pageNum >= 1 && pageNum <= pages.length && pages[pageNum - 1].matches(page);
+    }
+
+    /**
+     * @return the SHA-256 digest of the encoded (not decoded) bytes of the page's content streams and of the forms
+     *         in its resources and theirs, or null if they can't be read
+     */
+    static byte[] contentDigest(PDPage page) {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+        try {
+            Iterator<PDStream> streams = page.getContentStreams();
+            while (streams.hasNext()) {
+                digestRaw(streams.next().getCOSObject(), digest, buffer);
+            }
+            PDResources resources = page.getResources();
+            if (resources != null) {
+                Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                Deque<COSDictionary> todo = new ArrayDeque<>();
+                todo.push(resources.getCOSObject());
+                while (!todo.isEmpty()) {
+                    COSDictionary xObjects = todo.pop().getCOSDictionary(COSName.XOBJECT);
+                    if (xObjects == null) continue;
+                    for (COSName name : xObjects.keySet()) {
+                        if (!(xObjects.getDictionaryObject(name) instanceof COSStream form) || !seen.add(form)
+                                || !COSName.FORM.equals(form.getCOSName(COSName.SUBTYPE))) continue;
+                        digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+                        digestRaw(form, digest, buffer);
+                        COSDictionary formResources = form.getCOSDictionary(COSName.RESOURCES);
+                        if (formResources != null) todo.push(formResources);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+        return digest.digest();
+    }
+
+    private static void digestRaw(COSStream stream, MessageDigest digest, byte[] buffer) throws IOException {
+        try (InputStream in = stream.createRawInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+    }
+
+    private static float[] cropBox(PDPage page) {
+        PDRectangle box = page.getCropBox();
+        return new float[] {box.getLowerLeftX(), box.getLowerLeftY(), box.getUpperRightX(), box.getUpperRightY()};
+    }
+
+    /**
+     * Locate words, and the terms of a dictionary, in the whole document.
+     *
+     * @param words the words to locate, can be null
+     * @param dictionary a compiled term list, can be null
+     * @return the boxes, in the same order as {@link PdfRedaction#getRedactionAreas(PDDocument, List, TermDictionary)}
+     */
+    public RedactionAreas find(List<String> words, TermDictionary dictionary) {
+        RedactionAreas.Collector collector = new RedactionAreas.Collector(pages.length);
+        for (int i = 0; i < pages.length; i++) {
+            for (Rectangle2D box : find(i + 1, words, dictionary)) {
+                collector.add(i + 1, (float) box.getX(), (float) box.getY(), (float) box.getWidth(), (float) box.getHeight());
+            }
+        }
+        return collector.toAreas();
+    }
+
+    /**
+     * Locate words, and the terms of a dictionary, on one page.
+     *
+     * @param pageNum the 1-based page number
+     * @param words the words to locate, can be null
+     * @param dictionary a compiled term list, can be null
+     * @return the boxes, in unrotated page coordinates
+     */
+    public List<Rectangle2D> find(int pageNum, List<String> words, TermDictionary dictionary) {
+        if (pageNum < 1 || pageNum > pages.length) return Collections.emptyList();
+        Page page = pages[pageNum - 1];
+        if (page.lines.length == 0) return Collections.emptyList();
+
+        // matches as line, word, start, end; sorted so the boxes come out in the order WordFinder finds them
+        List<int[]> matches = new ArrayList<>();
+        if (words != null) {
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                if (word == null || word.trim().isEmpty()) continue;
+                findWord(pageNum - 1, page, word, w, matches);
+            }
+        }
+        if (dictionary != null) {
+            int order = words != null ? words.size() : 0;
+            for (int line = 0; line < page.lines.length; line++) {
+                final int l = line;
+                dictionary.find(page.lines[line], (start, end) -> matches.add(new int[] {l, order, start, end}));
+            }
+        }
+        matches.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0])
+                : a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[2], b[2]));
+
+        List<Rectangle2D> boxes = new ArrayList<>(matches.size());
+        for (int[] match : matches) {
+            boxes.add(page.box(match[0], match[2], match[3]));
+        }
+        return boxes;
+    }
+
+    /**
+     * one token: straight from the postings; anything else: its pattern on the lines with all its tokens
+     */
+    private void findWord(int pageIndex, Page page, String word, int order, List<int[]> matches) {
+        String folded = TextIndex.fold(word);
+        List<String> tokens = tokens(folded);
+        if (tokens.size() == 1 && tokens.get(0).length() == folded.length()) {
+            int[] list = postings.get(tokens.get(0));
+            if (list == null) return;
+            for (int i = firstPosting(list, pageIndex); i < list.length / 4 && list[4 * i] == pageIndex; i++) {
+                matches.add(new int[] {list[4 * i + 1], order, list[4 * i + 2], list[4 * i + 3]});
+            }
+            return;
+        }
+
+        Set<Integer> candidates = null; // null: every line
+        for (String token : tokens) {
+            Set<Integer> lines = new HashSet<>();
+            int[] list = postings.get(token);
+            if (list != null) {
+                for (int i = firstPosting(list, pageIndex); i < list.length / 4 && list[4 * i] == pageIndex; i++) {
+                    lines.add(list[4 * i + 1]);
+                }
+            }
+            if (candidates == null) candidates = lines;
+            else candidates.retainAll(lines);
+            if (candidates.isEmpty()) return;
+        }
+        Pattern pattern = WordFinder.compile(word);
+        for (int line = 0; line < page.lines.length; line++) {
+            if (candidates != null && !candidates.contains(line)) continue;
+            Matcher matcher = pattern.matcher(page.lines[line]);
+            while (matcher.find()) {
+                matches.add(new int[] {line, order, matcher.start(), matcher.end()});
+            }
+        }
+    }
+
+    /**
+     * @return the index of the first posting on a page, by binary search (postings are in page order)
+     */
+    private static int firstPosting(int[] list, int pageIndex) {
+        int low = 0;
+        int high = list.length / 4;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list[4 * mid] < pageIndex) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * the runs of letters, digits and underscores of folded text, the characters of a regex \w, in lowercase
+     * as words are matched ignoring (ASCII) case
+     */
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && isWordChar(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, PostingList> postings, String text, int pageIndex, int line) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && isWordChar(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                postings.computeIfAbsent(text.substring(start, i).toLowerCase(Locale.ROOT), token -> new PostingList()).add(pageIndex, line, start, i);
+                start = -1;
+            }
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * postings of one token while building
+     */
+    private static class PostingList {
+        private int[] data = new int[16];
+        private int size = 0;
+
+        void add(int page, int line, int start, int end) {
+            if (size + 4 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = page;
+            data[size++] = line;
+            data[size++] = start;
+            data[size++] = end;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Write the index to a file, compressed.  It's written to a temporary file first and then moved into place,
+     * so a reader never sees half an index.
+     *
+     * @param file the file
+     * @throws IOException if it can't be written
+     */
+    public void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "index", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(hash);
+                out.writeInt(pages.length);
+                for (Page page : pages) {
+                    for (float value : page.cropBox) out.writeFloat(value);
+                    out.writeInt(page.pageRotation);
+                    out.writeLong(page.contentLength);
+                    out.writeInt(page.contentDigest != null ? page.contentDigest.length : -1);
+                    if (page.contentDigest != null) out.write(page.contentDigest);
+                    out.writeFloat(page.cropWidth);
+                    out.writeFloat(page.cropHeight);
+                    out.writeInt(page.rotation);
+                    out.writeInt(page.geometry.length);
+                    for (float value : page.geometry) out.writeFloat(value);
+                    out.writeInt(page.lines.length);
+                    for (int line = 0; line < page.lines.length; line++) {
+                        String text = page.lines[line];
+                        out.writeInt(text.length());
+                        out.writeChars(text);
+                        for (int c = 0; c < text.length(); c++) {
+                            out.writeInt(page.firstGlyph[line][c]);
+                            out.writeInt(page.lastGlyph[line][c]);
+                        }
+                    }
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int value : entry.getValue()) out.writeInt(value);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read an index written by {@link #save(Path)}.
+     *
+     * @param file the file
+     * @return the index
+     * @throws IOException if the file can't be read, or isn't an index of this version
+     */
+    public static DocumentIndex load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a document index");
+            if (in.readInt() != VERSION) throw new IOException(file + " is an index of another version");
+            String hash = in.readUTF();
+            Page[] pages = new Page[in.readInt()];
+            for (int p = 0; p < pages.length; p++) {
+                float[] cropBox = new float[4];
+                for (int i = 0; i < cropBox.length; i++) cropBox[i] = in.readFloat();
+                int pageRotation = in.readInt();
+                long contentLength = in.readLong();
+                int digestLength = in.readInt();
+                byte[] contentDigest = digestLength >= 0 ? new byte[digestLength] : null;
+                if (contentDigest != null) in.readFully(contentDigest);
+                float cropWidth = in.readFloat();
+                float cropHeight = in.readFloat();
+                int rotation = in.readInt();
+                float[] geometry = new float[in.readInt()];
+                for (int i = 0; i < geometry.length; i++) geometry[i] = in.readFloat();
+                String[] lines = new String[in.readInt()];
+                int[][] firstGlyph = new int[lines.length][];
+                int[][] lastGlyph = new int[lines.length][];
+                for (int line = 0; line < lines.length; line++) {
+                    char[] text = new char[in.readInt()];
+                    for (int c = 0; c < text.length; c++) text[c] = in.readChar();
+                    lines[line] = new String(text);
+                    firstGlyph[line] = new int[text.length];
+                    lastGlyph[line] = new int[text.length];
+                    for (int c = 0; c < text.length; c++) {
+                        firstGlyph[line][c] = in.readInt();
+                        lastGlyph[line][c] = in.readInt();
+                    }
+                }
+                pages[p] = new Page(cropBox, pageRotation, contentLength, contentDigest, cropWidth, cropHeight, rotation, geometry, lines,
+                        firstGlyph, lastGlyph);
+            }
+            int numTokens = in.readInt();
+            Map<String, int[]> postings = new HashMap<>(numTokens * 2);
+            for (int t = 0; t < numTokens; t++) {
+                String token = in.readUTF();
+                int[] list = new int[in.readInt()];
+                for (int i = 0; i < list.length; i++) list[i] = in.readInt();
+                postings.put(token, list);
+            }
+            return new DocumentIndex(hash, pages, postings);
+        }
+    }
+
+    /**
+     * @param pdf the bytes of a document
+     * @return the SHA-256 hash of the bytes, in hex, the key of the document's index
+     */
+    public static String hash(byte[] pdf) {
+        return HexFormat.of().formatHex(sha256().digest(pdf));
+    }
+
+    /**
+     * @param file a document
+     * @return the SHA-256 hash of the file, in hex, the key of the document's index
+     * @throws IOException if the file can't be read
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    public String getHash() { return hash; }
+    public int getPageCount() { return pages.length; }
+    public int getTokenCount() { return postings.size(); }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Removes data that isn't page content but can leak what was redacted, in one sweep over the whole object
+ * graph of a document.  The sweep is iterative (an explicit stack, not recursion) so deeply nested documents
+ * can't overflow the stack, and every object is visited once.
+ * <p>
+ * What is removed is chosen per {@link Category}, each removal is counted in a {@link SanitiserReport} with the
+ * bytes of the strings and streams under it (shared objects are counted, even if still used elsewhere).
+ */
+public class DocumentSanitiser {
+
+    public enum Category {
+        INFO,              // the document information dictionary: author, title, producer, dates
+        DOCUMENT_METADATA, // the XMP metadata stream of the document
+        OBJECT_METADATA,   // XMP metadata streams of pages, images, fonts and forms
+        EMBEDDED_FILES,    // attached files: the embedded files name tree, embedded file streams, attachment annotations
+        JAVASCRIPT,        // the JavaScript name tree and every JavaScript action
+        PAGE_PIECES,       // private application data (PieceInfo) of the document, pages and forms
+        THUMBNAILS         // page thumbnail images
+    }
+
+    private static final COSName PIECE_INFO = COSName.getPDFName("PieceInfo");
+    private static final COSName THUMB = COSName.getPDFName("Thumb");
+    private static final COSName EMBEDDED_FILES = COSName.getPDFName("EmbeddedFiles");
+    private static final COSName FILE_ATTACHMENT = COSName.getPDFName("FileAttachment");
+
+    private final Set<Category> categories;
+
+    /**
+     * @param categories what to remove
+     */
+    public DocumentSanitiser(Set<Category> categories) {
+        this.categories = categories == null || categories.isEmpty()
+                ? EnumSet.noneOf(Category.class) : EnumSet.copyOf(categories);
+    }
+
+    /**
+     * @return a sanitiser removing only the document information and XMP metadata, what every redaction removes
+     */
+    public static DocumentSanitiser metadata() {
+        return new DocumentSanitiser(EnumSet.of(Category.INFO, Category.DOCUMENT_METADATA));
+    }
+
+    /**
+     * @return a sanitiser removing everything it knows about
+     */
+    public static DocumentSanitiser all() {
+        return new DocumentSanitiser(EnumSet.allOf(Category.class));
+    }
+
+    /**
+     * Sanitise a document.
+     *
+     * @param document the document, changed in place
+     * @return what was removed
+     */
+    public SanitiserReport sanitise(PDDocument document) {
+        SanitiserReport report = new SanitiserReport();
+        if (document == null || categories.isEmpty()) return report;
+
+        COSDictionary trailer = document.getDocument().getTrailer();
+        COSDictionary catalog = document.getDocumentCatalog().getCOSObject();
+
+        // the document level entries
+        if (categories.contains(Category.INFO)) {
+            COSBase info = trailer.getDictionaryObject(COSName.INFO);
+            if (info instanceof COSDictionary dictionary && dictionary.size() > 0) {
+                report.removed(Category.INFO, size(info));
+            }
+            // replacing it with a brand new, empty object wipes the old dictionary
+            document.setDocumentInformation(new PDDocumentInformation());
+        }
+        if (categories.contains(Category.DOCUMENT_METADATA)) {
+            remove(catalog, COSName.METADATA, Category.DOCUMENT_METADATA, report);
+        }
+        COSDictionary names = catalog.getCOSDictionary(COSName.NAMES);
+        if (names != null) {
+            if (categories.contains(Category.EMBEDDED_FILES)) {
+                remove(names, EMBEDDED_FILES, Category.EMBEDDED_FILES, report);
+            }
+            if (categories.contains(Category.JAVASCRIPT)) {
+                remove(names, COSName.JAVA_SCRIPT, Category.JAVASCRIPT, report);
+            }
+        }
+
+        // then everything reachable, once, unless only document level entries are removed
+        if (!categories.contains(Category.OBJECT_METADATA) && !categories.contains(Category.EMBEDDED_FILES)
+                && !categories.contains(Category.JAVASCRIPT) && !categories.contains(Category.PAGE_PIECES)
+                && !categories.contains(Category.THUMBNAILS)) {
+            return report;
+        }
+        Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> todo = new ArrayDeque<>();
+        todo.push(trailer);
+        while (!todo.isEmpty()) {
+            COSBase base = resolve(todo.pop());
+            if (base == null || !seen.add(base)) continue;
+
+            if (base instanceof COSDictionary dictionary) {
+                sanitiseDictionary(dictionary, dictionary == catalog, report);
+                for (COSName key : new ArrayList<>(dictionary.keySet())) {
+                    // the page tree is reachable from the catalog, no need to climb back up it
+                    if (COSName.PARENT.equals(key)) continue;
+                    push(dictionary.getItem(key), todo);
+                }
+            } else if (base instanceof COSArray array) {
+                sanitiseArray(array, report);
+                for (int i = 0; i < array.size(); i++) {
+                    push(array.get(i), todo);
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * remove the entries of a dictionary that fall in one of our categories
+     */
+    private void sanitiseDictionary(COSDictionary dictionary, boolean isCatalog, SanitiserReport report) {
+        if (categories.contains(Category.OBJECT_METADATA) && !isCatalog) {
+            remove(dictionary, COSName.METADATA, Category.OBJECT_METADATA, report);
+        }
+        if (categories.contains(Category.PAGE_PIECES)) {
+            remove(dictionary, PIECE_INFO, Category.PAGE_PIECES, report);
+        }
+        if (categories.contains(Category.THUMBNAILS)) {
+            remove(dictionary, THUMB, Category.THUMBNAILS, report);
+        }
+        if (categories.contains(Category.EMBEDDED_FILES)) {
+            // the embedded file streams of a file specification
+            remove(dictionary, COSName.EF, Category.EMBEDDED_FILES, report);
+        }
+        if (categories.contains(Category.JAVASCRIPT)) {
+            // any entry that is a JavaScript action: open actions, additional actions, link actions
+            for (COSName key : new ArrayList<>(dictionary.keySet())) {
+                if (COSName.PARENT.equals(key)) continue;
+                if (isJavaScriptAction(dictionary.getDictionaryObject(key))) {
+                    remove(dictionary, key, Category.JAVASCRIPT, report);
+                }
+            }
+        }
+    }
+
+    /**
+     * remove the elements of an array that fall in one of our categories: file attachment annotations of
+     * an /Annots array, JavaScript actions of an action chain
+     */
+    private void sanitiseArray(COSArray array, SanitiserReport report) {
+        for (int i = array.size() - 1; i >= 0; i--) {
+            COSBase element = resolve(array.get(i));
+            if (!(element instanceof COSDictionary dictionary)) continue;
+            if (categories.contains(Category.EMBEDDED_FILES)
+                    && FILE_ATTACHMENT.equals(dictionary.getCOSName(COSName.SUBTYPE))) {
+                report.removed(Category.EMBEDDED_FILES, size(dictionary));
+                array.remove(i);
+            } else if (categories.contains(Category.JAVASCRIPT) && isJavaScriptAction(dictionary)) {
+                report.removed(Category.JAVASCRIPT, size(dictionary));
+                array.remove(i);
+            }
+        }
+    }
+
+    private static boolean isJavaScriptAction(COSBase base) {
+        return base instanceof COSDictionary dictionary && COSName.JAVA_SCRIPT.equals(dictionary.getCOSName(COSName.S));
+    }
+
+    private static void remove(COSDictionary dictionary, COSName key, Category category, SanitiserReport report) {
+        COSBase value = dictionary.getDictionaryObject(key);
+        if (value == null) return;
+        report.removed(category, size(value));
+        dictionary.removeItem(key);
+    }
+
+    private static void push(COSBase base, Deque<COSBase> todo) {
+        if (base instanceof COSDictionary || base instanceof COSArray || base instanceof COSObject) {
+            todo.push(base);
+        }
+    }
+
+    private static COSBase resolve(COSBase base) {
+        return base instanceof COSObject object ? object.getObject() : base;
+    }
+
+    /**
+     * The bytes of the strings and (encoded) streams under an object, also walked without recursion.  The
+     * links back up to a page or its parent aren't followed, they aren't part of the object.
+     */
+    static long size(COSBase root) {
+        long size = 0;
+        Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSBase> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            COSBase base = resolve(todo.pop());
+            if (base == null || !seen.add(base)) continue;
+            if (base instanceof COSStream stream) {
+                size += Math.max(0, stream.getLength());
+            } else if (base instanceof COSString string) {
+                size += string.getBytes().length;
+            }
+            if (base instanceof COSDictionary dictionary) {
+                for (COSName key : dictionary.keySet()) {
+                    if (COSName.PARENT.equals(key) || COSName.P.equals(key)) continue;
+                    todo.push(dictionary.getItem(key));
+                }
+            } else if (base instanceof COSArray array) {
+                for (int i = 0; i < array.size(); i++) {
+                    todo.push(array.get(i));
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the categories removed
+     */
+    public Set<Category> getCategories() {
+        return Collections.unmodifiableSet(categories);
+    }
+
+}
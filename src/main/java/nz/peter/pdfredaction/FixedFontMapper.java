@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.fontbox.FontBoxFont;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.font.CIDFontMapping;
+import org.apache.pdfbox.pdmodel.font.FontMapper;
+import org.apache.pdfbox.pdmodel.font.FontMapping;
+import org.apache.pdfbox.pdmodel.font.PDCIDSystemInfo;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link FontMapper} for un-embedded fonts that never scans the system fonts.
+ * PDFBox's default mapper builds (and caches on disk) an index of every font installed on the machine the
+ * first time it meets a font that isn't embedded, which can take seconds in a fresh container.  Finding and
+ * scrubbing words only needs the font's encoding, so any font will do there: fonts can be mapped explicitly by
+ * name, everything else gets the Liberation Sans font that ships inside PDFBox.
+ * <p>
+ * The mapper is process wide and rendering uses it too: pages burnt in ({@link PageBurner}) and previews
+ * ({@link RegionPreviewer}) draw un-embedded text in the mapped font, so its shapes and widths can differ from
+ * the font the document names.  Map the fonts that matter by name if that's a problem.
+ * <p>
+ * Install with {@code FontMappers.set(new FixedFontMapper())} or {@link RedactionWarmUp#warmUp(boolean)}.
+ */
+public class FixedFontMapper implements FontMapper {
+
+    private static final String FALLBACK_FONT = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    private final TrueTypeFont fallbackFont;
+    private final Map<String, TrueTypeFont> fonts = new ConcurrentHashMap<>();
+
+    // constructor
+    public FixedFontMapper() throws IOException {
+        try (InputStream in = FixedFontMapper.class.getResourceAsStream(FALLBACK_FONT)) {
+            if (in == null)
+                throw new FileNotFoundException(FALLBACK_FONT);
+            fallbackFont = new TTFParser().parse(new RandomAccessReadBuffer(in));
+        }
+    }
+
+    /**
+     * map a PostScript font name (e.g. "Arial-BoldMT") to a TrueType font file
+     *
+     * @param baseFont the name of the font as used in the PDF
+     * @param fontFile the TrueType font file to use for it
+     * @throws IOException if the font file can't be read
+     */
+    public void addFont(String baseFont, File fontFile) throws IOException {
+        if (baseFont == null || fontFile == null) return;
+        fonts.put(baseFont, new TTFParser().parse(new RandomAccessReadBufferedFile(fontFile)));
+    }
+
+    @Override
+    public FontMapping<TrueTypeFont> getTrueTypeFont(String baseFont, PDFontDescriptor fontDescriptor) {
+        TrueTypeFont font = baseFont != null ? fonts.get(baseFont) : null;
+        if (font != null) {
+            return new FontMapping<>(font, false);
+        }
+        return new FontMapping<>(fallbackFont, true);
+    }
+
+    @Override
+    public FontMapping<FontBoxFont> getFontBoxFont(String baseFont, PDFontDescriptor fontDescriptor) {
+        TrueTypeFont font = baseFont != null ? fonts.get(baseFont) : null;
+        if (font != null) {
+            return new FontMapping<>(font, false);
+        }
+        return new FontMapping<>(fallbackFont, true);
+    }
+
+    @Override
+    public CIDFontMapping getCIDFont(String baseFont, PDFontDescriptor fontDescriptor, PDCIDSystemInfo cidSystemInfo) {
+        TrueTypeFont font = baseFont != null ? fonts.get(baseFont) : null;
+        if (font != null) {
+            return new CIDFontMapping(null, font, false);
+        }
+        return new CIDFontMapping(null, fallbackFont, true);
+    }
+
+}
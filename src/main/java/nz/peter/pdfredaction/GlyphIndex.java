@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * The glyphs of a page, kept in primitive arrays: their text and the few numbers needed to put them in reading
+ * order and box them.  A {@link TextPosition} carries matrices, a font and more, keeping one per glyph for a
+ * whole page (as {@link org.apache.pdfbox.text.PDFTextStripper} does to sort them) is expensive on dense pages;
+ * here a glyph costs about 30 bytes and the positions are garbage as soon as they're recorded.
+ * <p>
+ * Coordinates are the text direction adjusted ones of a TextPosition: x to the right, y down to the baseline.
+ */
+class GlyphIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size = 0;
+    private final StringBuilder unicode = new StringBuilder(INITIAL_CAPACITY);
+    private int[] unicodeStart = new int[INITIAL_CAPACITY + 1]; // glyph g is unicode[unicodeStart[g], unicodeStart[g + 1])
+    private float[] x = new float[INITIAL_CAPACITY];
+    private float[] y = new float[INITIAL_CAPACITY]; // the baseline
+    private float[] width = new float[INITIAL_CAPACITY];
+    private float[] height = new float[INITIAL_CAPACITY];
+    private float[] spaceWidth = new float[INITIAL_CAPACITY];
+    private float[] dir = new float[INITIAL_CAPACITY]; // the text direction: 0, 90, 180 or 270
+    private float pageHeight = 0;
+
+    /**
+     * Record a glyph, the position itself isn't kept.
+     *
+     * @param position the glyph
+     */
+    void add(TextPosition position) {
+        String text = position.getUnicode();
+        if (text == null || text.isEmpty()) return;
+        if (size == x.length) grow();
+        unicode.append(text);
+        unicodeStart[size + 1] = unicode.length();
+        x[size] = position.getXDirAdj();
+        y[size] = position.getYDirAdj();
+        width[size] = position.getWidthDirAdj();
+        height[size] = position.getHeightDir();
+        spaceWidth[size] = position.getWidthOfSpace();
+        dir[size] = position.getDir();
+        pageHeight = position.getPageHeight();
+        size++;
+    }
+
+    /**
+     * forget all glyphs, keeping the arrays for the next page
+     */
+    void clear() {
+        size = 0;
+        unicode.setLength(0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        unicodeStart = Arrays.copyOf(unicodeStart, capacity + 1);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        spaceWidth = Arrays.copyOf(spaceWidth, capacity);
+        dir = Arrays.copyOf(dir, capacity);
+    }
+
+    /**
+     * A line of text, in reading order.  Each unit of the text is a glyph, a gap wide enough to be a space
+     * (without a space glyph) is put in front of the glyph after it.
+     */
+    static class Line {
+        final StringBuilder text = new StringBuilder();
+        int[] unitStart = new int[64]; // unit u is text[unitStart[u], unitStart[u + 1])
+        int[] glyph = new int[64]; // the glyph of each unit
+        int units = 0;
+
+        private void add(CharSequence source, int from, int to, boolean spaceBefore, int glyphIndex) {
+            if (units + 1 == unitStart.length) {
+                unitStart = Arrays.copyOf(unitStart, unitStart.length * 2);
+                glyph = Arrays.copyOf(glyph, glyph.length * 2);
+            }
+            unitStart[units] = text.length();
+            if (spaceBefore) text.append(' ');
+            text.append(source, from, to);
+            glyph[units] = glyphIndex;
+            units++;
+            unitStart[units] = text.length();
+        }
+
+        private void clear() {
+            text.setLength(0);
+            units = 0;
+            unitStart[0] = 0;
+        }
+    }
+
+    /**
+     * receives the lines of the page
+     */
+    interface LineConsumer {
+        void line(Line line);
+    }
+
+    /**
+     * Put the glyphs in reading order and pass them on a line at a time, the order of {@code setSortByPosition(true)}:
+     * by text direction, then top to bottom, then left to right.  A glyph is on a line if its baseline is within the
+     * height of the line.  Duplicates drawn over each other (fake bold) are left out, as the text stripper does.
+     *
+     * @param consumer receives each line, the line object is reused
+     */
+    void lines(LineConsumer consumer) {
+        if (size == 0) return;
+        int[] order = new int[size];
+        for (int g = 0; g < size; g++) order[g] = g;
+        sort(order, 0, size, (a, b) -> {
+            int cmp = Float.compare(dir[a], dir[b]);
+            return cmp != 0 ? cmp : Float.compare(y[a], y[b]);
+        });
+
+        Line line = new Line();
+        int start = 0;
+        while (start < size) {
+            // the glyphs of this line: same direction, baseline no lower than the top of the first glyph's line
+            int first = order[start];
+            float bottom = y[first];
+            int end = start + 1;
+            while (end < size && dir[order[end]] == dir[first] && y[order[end]] - height[order[end]] <= bottom) {
+                bottom = Math.max(bottom, y[order[end]]);
+                end++;
+            }
+            sort(order, start, end, (a, b) -> Float.compare(x[a], x[b]));
+
+            line.clear();
+            int previous = -1;
+            for (int i = start; i < end; i++) {
+                int g = order[i];
+                if (previous >= 0 && isDuplicate(previous, g)) continue;
+                boolean spaceBefore = previous >= 0 && !endsWithSpace(previous) && !startsWithSpace(g)
+                        && x[g] > x[previous] + width[previous] + 0.5f * gapTolerance(previous);
+                line.add(unicode, unicodeStart[g], unicodeStart[g + 1], spaceBefore, g);
+                previous = g;
+            }
+            consumer.line(line);
+            start = end;
+        }
+    }
+
+    /**
+     * Box glyphs first to last (in reading order on one line), with some padding, in unrotated page coordinates.
+     *
+     * @param first the first glyph
+     * @param last the last glyph
+     * @param cropWidth the width of the page's crop box
+     * @param cropHeight the height of the page's crop box
+     * @param rotation the page's rotation
+     * @return the box
+     */
+    Rectangle2D box(int first, int last, float cropWidth, float cropHeight, int rotation) {
+        return box(x[first], pageHeight - y[first], x[last] + width[last], height[first], cropWidth, cropHeight, rotation);
+    }
+
+    /**
+     * @return the geometry {@link #box(float, float, float, float, float, float, int)} needs of every glyph: its
+     * left, its baseline up from the bottom of the page, its right and its height, 4 floats per glyph
+     */
+    float[] geometry() {
+        float[] geometry = new float[size * 4];
+        for (int g = 0; g < size; g++) {
+            geometry[4 * g] = x[g];
+            geometry[4 * g + 1] = pageHeight - y[g];
+            geometry[4 * g + 2] = x[g] + width[g];
+            geometry[4 * g + 3] = height[g];
+        }
+        return geometry;
+    }
+
+    /**
+     * Box a run of text, with some padding, in unrotated page coordinates.
+     *
+     * @param left the left of the first glyph, in text direction adjusted coordinates
+     * @param baseline the baseline of the first glyph, up from the bottom of the page
+     * @param right the right of the last glyph
+     * @param height the height of the first glyph
+     * @param cropWidth the width of the page's crop box
+     * @param cropHeight the height of the page's crop box
+     * @param rotation the page's rotation
+     * @return the box
+     */
+    static Rectangle2D box(float left, float baseline, float right, float height, float cropWidth, float cropHeight, int rotation) {
+        float vX = left;
+        float vY = baseline;
+        float vW = right - vX;
+        float vH = height;
+
+        // Add padding to the visual box before transformation so it scales correctly
+        vX -= 1;
+        vY -= 2;
+        vW += 2;
+        vH += 4;
+
+        // Convert to Native Unrotated Coordinates (Machine Space)
+        float nX = vX;
+        float nY = vY;
+        float nW = vW;
+        float nH = vH;
+
+        if (rotation == 90) {
+            nX = cropWidth - vY - vH;
+            nY = vX;
+            nW = vH;
+            nH = vW;
+        } else if (rotation == 180) {
+            nX = cropWidth - vX - vW;
+            nY = cropHeight - vY - vH;
+        } else if (rotation == 270) {
+            nX = vY;
+            nY = cropHeight - vX - vW;
+            nW = vH;
+            nH = vW;
+        }
+        return new Rectangle2D.Float(nX, nY, nW, nH);
+    }
+
+    /**
+     * the same text drawn at (almost) the same place, within a third of the glyph's size
+     */
+    private boolean isDuplicate(int a, int b) {
+        if (Math.abs(x[a] - x[b]) > width[a] / 3 || Math.abs(y[a] - y[b]) > height[a] / 3) return false;
+        int length = unicodeStart[a + 1] - unicodeStart[a];
+        if (length != unicodeStart[b + 1] - unicodeStart[b]) return false;
+        for (int i = 0; i < length; i++) {
+            if (unicode.charAt(unicodeStart[a] + i) != unicode.charAt(unicodeStart[b] + i)) return false;
+        }
+        return true;
+    }
+
+    private float gapTolerance(int g) {
+        // fonts without a usable space width: use the width of the glyph
+        return spaceWidth[g] > 0 && !Float.isNaN(spaceWidth[g]) ? spaceWidth[g] : width[g];
+    }
+
+    private boolean startsWithSpace(int g) {
+        return Character.isWhitespace(unicode.charAt(unicodeStart[g]));
+    }
+
+    private boolean endsWithSpace(int g) {
+        return Character.isWhitespace(unicode.charAt(unicodeStart[g + 1] - 1));
+    }
+
+    /**
+     * A stable merge sort of part of an int array, without boxing the ints.
+     *
+     * @param a the array
+     * @param from the first index to sort
+     * @param to the index after the last to sort
+     * @param comparator compares two elements
+     */
+    static void sort(int[] a, int from, int to, IntBinaryOperator comparator) {
+        if (to - from < 2) return;
+        int[] buffer = new int[to - from];
+        mergeSort(a, buffer, from, to, comparator);
+    }
+
+    private static void mergeSort(int[] a, int[] buffer, int from, int to, IntBinaryOperator comparator) {
+        if (to - from <= 16) {
+            // insertion sort for short runs
+            for (int i = from + 1; i < to; i++) {
+                int value = a[i];
+                int j = i - 1;
+                while (j >= from && comparator.applyAsInt(a[j], value) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = value;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(a, buffer, from, middle, comparator);
+        mergeSort(a, buffer, middle, to, comparator);
+        if (comparator.applyAsInt(a[middle - 1], a[middle]) <= 0) return; // already in order
+        int left = from;
+        int right = middle;
+        int k = 0;
+        while (left < middle && right < to) {
+            buffer[k++] = comparator.applyAsInt(a[left], a[right]) <= 0 ? a[left++] : a[right++];
+        }
+        while (left < middle) buffer[k++] = a[left++];
+        while (right < to) buffer[k++] = a[right++];
+        System.arraycopy(buffer, 0, a, from, k);
+    }
+
+}
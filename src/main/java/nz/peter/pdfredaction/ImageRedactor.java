@@ -12,31 +12,68 @@
 package nz.peter.pdfredaction;
 
 import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
 import org.apache.pdfbox.util.Matrix;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Evaluates the content stream to find images, calculates their rendered bounds,
  * and overwrites overlapping regions directly in the image stream.
+ * <p>
+ * Images are drawn into the unit square mapped onto the page by the full current transformation matrix,
+ * so rotated, flipped and sheared images are masked exactly.  Image XObjects are replaced in the resources
+ * they were drawn from, inline images (BI/ID/EI) of the page's content stream are rewritten in the stream.
+ * <p>
+ * An image completely under one box is replaced by a single black pixel without being decoded or re-encoded,
+ * and an image only touched by boxes outside the crop box (where nothing is visible) is left alone.
  */
 class ImageRedactor extends PDFGraphicsStreamEngine {
 
     private final List<Rectangle2D> redactionBoxes;
     private final PDPage page;
     private final PDDocument document; // Added document reference
+    private final Rectangle2D cropArea; // the visible part of the page
+    private BudgetTracker budgetTracker = null; // optional resource limits
+    private ParallelDeflater deflater = null; // optional multithreaded compression
+    private StripImageRedactor stripRedactor = null; // masks images above the memory limit in bands
+
+    // inline images of the page's own content stream, numbered by their BI operators in stream order (drawn or
+    // not, PDFBox skips empty ones), and those that were masked
+    private int inlineImageCount = 0;
+    private int currentInlineImage = -1; // the number of the BI operator being processed, -1 if none
+    private final Map<Integer, BufferedImage> maskedInlineImages = new HashMap<>();
+    private final Map<Integer, byte[]> maskedStencils = new HashMap<>(); // decoded 1-bit rows
+    private int type3Depth = 0; // > 0 while inside a Type3 glyph
 
     // constructor
     protected ImageRedactor(PDDocument document, PDPage page, List<Rectangle2D> redactionBoxes) {
@@ -45,13 +82,29 @@ class ImageRedactor extends PDFGraphicsStreamEngine {
         this.page = page;
         this.redactionBoxes = redactionBoxes;
         this.document = document;
+        PDRectangle cropBox = page.getCropBox();
+        this.cropArea = new Rectangle2D.Float(cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getWidth(), cropBox.getHeight());
+    }
+
+    /**
+     * Processes the page, then rewrites any inline images of its content stream that were masked.
+     *
+     * @param page the page to process
+     * @throws IOException if an error occurs during processing
+     */
+    @Override
+    public void processPage(PDPage page) throws IOException {
+        super.processPage(page);
+        if (!maskedInlineImages.isEmpty() || !maskedStencils.isEmpty()) {
+            rewriteInlineImages();
+        }
     }
 
     /**
      * Renders a given image onto a PDF page while applying redaction based on specified bounding boxes.
      * If any portion of the image intersects with the predefined redaction areas, those portions
      * are redacted by overlaying black rectangles on the image raster. The redacted image is then
-     * re-embedded into the PDF page resources.
+     * re-embedded into the PDF page resources, or for inline images, into the content stream.
      *
      * @param image the {@link PDImage} object containing the image to be rendered on the PDF page
      * @throws IOException if an error occurs during image processing or modification
@@ -62,60 +115,337 @@ class ImageRedactor extends PDFGraphicsStreamEngine {
         Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
         if (ctm == null) return;
 
-        // Calculate image bounding box on the page
-        float x = ctm.getTranslateX();
-        float y = ctm.getTranslateY();
-        float width = ctm.getScaleX();
-        float height = ctm.getScaleY();
+        // inline images are numbered by their BI operator in the page's own content stream, those in forms
+        // and Type3 glyphs live in other streams and can't be rewritten here
+        int inlineIndex = -1;
+        if (image instanceof PDInlineImage) {
+            if (currentInlineImage < 0) return;
+            inlineIndex = currentInlineImage;
+        }
+
+        // the transformed unit square the image is drawn into
+        Shape imageOutline = imageOutline(ctm);
+        Rectangle2D imageBounds = imageOutline.getBounds2D();
 
-        Rectangle2D imageBounds = new Rectangle2D.Float(x, y, width, height);
+        // only the visible parts of the boxes count: an image touched by boxes outside the crop box alone
+        // isn't decoded, one that is completely under a box is replaced by a black pixel without decoding it
+        boolean visiblyCovered = false;
+        for (Rectangle2D box : redactionBoxes) {
+            Rectangle2D visible = box.createIntersection(cropArea);
+            if (visible.isEmpty() || !imageOutline.intersects(visible)) continue;
+            visiblyCovered = true;
+            if (!image.isStencil() && box.contains(imageBounds)) {
+                if (inlineIndex >= 0) {
+                    maskedInlineImages.put(inlineIndex, blackPixel());
+                } else {
+                    replaceXObject(image, LosslessFactory.createFromImage(document, blackPixel()));
+                }
+                return;
+            }
+        }
+        if (!visiblyCovered) return;
+
+        // a stencil mask paints in the current colour where its bits say so: clear those bits under the boxes
+        if (inlineIndex >= 0 && image.isStencil()) {
+            maskStencil(image, inlineIndex, ctm, imageOutline);
+            return;
+        }
+
+        // too large to decode whole: mask it a band of rows at a time, through a scratch file
+        if (image instanceof PDImageXObject xObject && inlineIndex < 0 && stripRedactor != null
+                && stripRedactor.isLarge(xObject) && stripRedactor.canRedact(xObject)) {
+            if (budgetTracker != null) {
+                budgetTracker.checkImage((long) image.getWidth() * image.getHeight());
+            }
+            AffineTransform toRaster = pageToRaster(ctm, image.getWidth(), image.getHeight());
+            if (toRaster == null) return;
+            List<Shape> rasterBoxes = new ArrayList<>();
+            for (Rectangle2D box : redactionBoxes) {
+                if (imageOutline.intersects(box)) {
+                    rasterBoxes.add(toRaster.createTransformedShape(box));
+                }
+            }
+            replaceXObject(image, stripRedactor.redact(document, xObject, rasterBoxes));
+            return;
+        }
 
         boolean modified = false;
         BufferedImage bufferedImage = null;
+        AffineTransform pageToRaster = null;
 
         for (Rectangle2D box : redactionBoxes) {
-            if (imageBounds.intersects(box)) {
+            if (imageOutline.intersects(box)) {
                 if (bufferedImage == null) {
+                    if (budgetTracker != null) {
+                        budgetTracker.checkImage((long) image.getWidth() * image.getHeight());
+                    }
                     bufferedImage = image.getImage(); // Extract raster
+                    pageToRaster = pageToRaster(ctm, bufferedImage.getWidth(), bufferedImage.getHeight());
+                    if (pageToRaster == null) return; // collapsed to a line, nothing visible
                 }
 
-                // Calculate intersection relative to the page
-                Rectangle2D intersection = imageBounds.createIntersection(box);
+                // Draw the box, mapped back into image raster coordinates, on the image raster
+                Shape rasterBox = pageToRaster.createTransformedShape(box);
+                if (isAxisAligned(pageToRaster)) {
+                    // still a rectangle: fill the scanlines straight in the raster
+                    RasterMask.fill(bufferedImage, RasterMask.pixelBounds(rasterBox.getBounds2D()));
+                } else {
+                    Graphics2D g2d = bufferedImage.createGraphics();
+                    g2d.setColor(Color.BLACK);
+                    g2d.fill(rasterBox);
+                    g2d.dispose();
+                }
 
-                // Map intersection back to image raster coordinates
-                float scaleX = bufferedImage.getWidth() / width;
-                float scaleY = bufferedImage.getHeight() / height;
+                modified = true;
+            }
+        }
 
-                int rasterX = (int) ((intersection.getX() - x) * scaleX);
-                // Invert Y because raster origin is top-left, PDF is bottom-left
-                int rasterY = (int) ((imageBounds.getMaxY() - intersection.getMaxY()) * scaleY);
-                int rasterW = (int) (intersection.getWidth() * scaleX);
-                int rasterH = (int) (intersection.getHeight() * scaleY);
+        if (modified) {
+            if (inlineIndex >= 0) {
+                // written back into the content stream once the page has been processed
+                maskedInlineImages.put(inlineIndex, bufferedImage);
+                return;
+            }
 
-                // Draw black box on the image raster
-                Graphics2D g2d = bufferedImage.createGraphics();
-                g2d.setColor(Color.BLACK);
-                g2d.fillRect(rasterX, rasterY, rasterW, rasterH);
-                g2d.dispose();
+            // Replace the image in the current resources (page or form) with the newly redacted image
+            replaceXObject(image, deflater != null
+                    ? deflater.createImage(document, bufferedImage)
+                    : LosslessFactory.createFromImage(document, bufferedImage));
+        }
+    }
 
-                modified = true;
+    /**
+     * Replace an image XObject in the current resources (page or form): find the name under which it is
+     * registered and overwrite it.
+     */
+    private void replaceXObject(PDImage image, PDImageXObject newImage) throws IOException {
+        PDResources resources = getResources() != null ? getResources() : page.getResources();
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) {
+                if (resources.getXObject(name).getCOSObject() == image.getCOSObject()) {
+                    resources.put(name, newImage);
+                    break;
+                }
             }
         }
+    }
 
-        if (modified) {
-            // Replace the image in the page resources with the newly redacted image
-            PDImageXObject newImage = LosslessFactory.createFromImage(document, bufferedImage);
-
-            // Find the COSName under which this image is registered and overwrite it
-            for (COSName name : page.getResources().getXObjectNames()) {
-                if (page.getResources().isImageXObject(name)) {
-                    if (page.getResources().getXObject(name).getCOSObject() == image.getCOSObject()) {
-                        page.getResources().put(name, newImage);
-                        break;
+    /**
+     * @return a single black pixel, stretched by the image's matrix over all of it
+     */
+    private static BufferedImage blackPixel() {
+        return new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    /**
+     * @param ctm the current transformation matrix at the time the image is drawn
+     * @return the quadrilateral of the page an image is drawn in
+     */
+    static Shape imageOutline(Matrix ctm) {
+        return ctm.createAffineTransform().createTransformedShape(new Rectangle2D.Double(0, 0, 1, 1));
+    }
+
+    /**
+     * The transformation from page coordinates to the pixels of an image: back through the current
+     * transformation matrix into the unit square, then onto the raster, whose origin is top-left.
+     *
+     * @param ctm the current transformation matrix at the time the image is drawn
+     * @param width the width of the image raster
+     * @param height the height of the image raster
+     * @return the transformation, or null if the image isn't visible (the matrix can't be inverted)
+     */
+    static AffineTransform pageToRaster(Matrix ctm, int width, int height) {
+        try {
+            AffineTransform transform = new AffineTransform(width, 0, 0, -height, 0, height);
+            transform.concatenate(ctm.createAffineTransform().createInverse());
+            return transform;
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param transform a transformation
+     * @return true if it maps rectangles onto rectangles (no rotation or shear, flips are fine)
+     */
+    static boolean isAxisAligned(AffineTransform transform) {
+        return transform.getShearX() == 0 && transform.getShearY() == 0;
+    }
+
+    /**
+     * Writes the masked inline images back into the page's content stream.  Every BI operator is counted in
+     * stream order, as {@link #processOperator} numbered them, whether PDFBox drew the image or not.
+     */
+    private void rewriteInlineImages() throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        List<Object> tokens = parser.parse();
+
+        int index = 0;
+        for (Object token : tokens) {
+            if (token instanceof Operator op && "BI".equals(op.getName())) {
+                BufferedImage masked = maskedInlineImages.get(index);
+                byte[] stencil = maskedStencils.get(index);
+                if (masked != null) {
+                    encodeInlineImage(op, masked);
+                } else if (stencil != null) {
+                    encodeStencil(op, stencil);
+                }
+                index++;
+            }
+        }
+
+        page.setContents(ParallelDeflater.contentStream(document, tokens, deflater));
+    }
+
+    /**
+     * Replace the parameters and data of an inline image operator with a Flate compressed 8-bit
+     * grey or RGB version of an image.
+     */
+    private void encodeInlineImage(Operator op, BufferedImage image) throws IOException {
+        boolean grey = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (OutputStream out = deflater != null ? data : new DeflaterOutputStream(data)) {
+            byte[] row = new byte[width * (grey ? 1 : 3)];
+            for (int y = 0; y < height; y++) {
+                int i = 0;
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    if (grey) {
+                        row[i++] = (byte) rgb;
+                    } else {
+                        row[i++] = (byte) (rgb >> 16);
+                        row[i++] = (byte) (rgb >> 8);
+                        row[i++] = (byte) rgb;
                     }
                 }
+                out.write(row);
             }
         }
+
+        COSDictionary parameters = new COSDictionary();
+        parameters.setInt(COSName.W, width);
+        parameters.setInt(COSName.H, height);
+        parameters.setInt(COSName.BPC, 8);
+        parameters.setItem(COSName.CS, grey ? COSName.DEVICEGRAY : COSName.DEVICERGB);
+        parameters.setItem(COSName.F, COSName.FLATE_DECODE);
+        op.setImageParameters(parameters);
+        op.setImageData(deflater != null ? deflater.deflate(data.toByteArray()) : data.toByteArray());
+    }
+
+    /**
+     * Mask an inline stencil mask: every sample under a box is set to the value that doesn't paint, so
+     * nothing of the original shape is left in the data, not just hidden by the black box over it.
+     */
+    private void maskStencil(PDImage image, int inlineIndex, Matrix ctm, Shape imageOutline) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform toRaster = pageToRaster(ctm, width, height);
+        if (toRaster == null) return;
+        if (budgetTracker != null) {
+            budgetTracker.checkImage((long) width * height);
+        }
+        int rowBytes = (width + 7) / 8;
+        byte[] data = new byte[rowBytes * height];
+        try (InputStream in = image.createInputStream()) {
+            in.readNBytes(data, 0, data.length);
+        }
+
+        // samples of 0 paint, unless the decode array is [1 0]
+        boolean paintsOne = image.getDecode() != null && image.getDecode().size() >= 1
+                && image.getDecode().toFloatArray()[0] == 1;
+        List<double[]> polygons = new ArrayList<>();
+        for (Rectangle2D box : redactionBoxes) {
+            if (imageOutline.intersects(box)) {
+                polygons.add(StripImageRedactor.polygon(toRaster.createTransformedShape(box)));
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (double[] polygon : polygons) {
+                double[] span = StripImageRedactor.span(polygon, y + 0.5);
+                if (span == null) continue;
+                int x0 = Math.max(0, (int) Math.ceil(span[0] - 0.5));
+                int x1 = Math.min(width, (int) Math.ceil(span[1] - 0.5));
+                for (int x = x0; x < x1; x++) {
+                    int i = y * rowBytes + x / 8;
+                    int bit = 0x80 >> (x % 8);
+                    data[i] = (byte) (paintsOne ? data[i] & ~bit : data[i] | bit);
+                }
+            }
+        }
+        maskedStencils.put(inlineIndex, data);
+    }
+
+    /**
+     * Replace the data of an inline stencil mask with its masked (decoded) rows, Flate compressed; the other
+     * parameters (size, decode array) stay as they were.
+     */
+    private void encodeStencil(Operator op, byte[] data) throws IOException {
+        COSDictionary parameters = new COSDictionary(op.getImageParameters());
+        for (COSName key : List.of(COSName.F, COSName.FILTER, COSName.DP, COSName.DECODE_PARMS)) {
+            parameters.removeItem(key);
+        }
+        parameters.setItem(COSName.F, COSName.FLATE_DECODE);
+        byte[] compressed;
+        if (deflater != null) {
+            compressed = deflater.deflate(data);
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (OutputStream deflating = new DeflaterOutputStream(out)) {
+                deflating.write(data);
+            }
+            compressed = out.toByteArray();
+        }
+        op.setImageParameters(parameters);
+        op.setImageData(compressed);
+    }
+
+    /**
+     * Type3 glyphs are content streams of their own, keep track of when we're inside one.
+     */
+    @Override
+    protected void processType3Stream(PDType3CharProc charProc, Matrix textRenderingMatrix) throws IOException {
+        type3Depth++;
+        try {
+            super.processType3Stream(charProc, textRenderingMatrix);
+        } finally {
+            type3Depth--;
+        }
+    }
+
+    /**
+     * Checks the resource budget (if any) before each content stream operator is processed, and numbers the
+     * BI operators of the page's own content stream.
+     */
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        if (budgetTracker != null) {
+            budgetTracker.checkToken();
+        }
+        if (!"BI".equals(operator.getName())) {
+            super.processOperator(operator, operands);
+            return;
+        }
+        currentInlineImage = getLevel() == 0 && type3Depth == 0 ? inlineImageCount++ : -1;
+        try {
+            super.processOperator(operator, operands);
+        } finally {
+            currentInlineImage = -1;
+        }
+    }
+
+    void setBudgetTracker(BudgetTracker budgetTracker) {
+        this.budgetTracker = budgetTracker;
+    }
+
+    void setDeflater(ParallelDeflater deflater) {
+        this.deflater = deflater;
+    }
+
+    void setImageMemoryLimit(long imageMemoryLimit) {
+        this.stripRedactor = imageMemoryLimit > 0 ? new StripImageRedactor(imageMemoryLimit) : null;
     }
 
     // Required overrides for PDFGraphicsStreamEngine (No-ops for our use case)
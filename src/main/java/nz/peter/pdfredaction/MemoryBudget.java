@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of heap shared by concurrent redactions.  Each page is admitted only once its
+ * {@link MemoryEstimator} estimate fits in what is left of the pool, so several documents can be redacted at
+ * the same time without two big scans running out of memory together.  Share one instance between all
+ * the redactions of a process through {@link RedactionOptions#setMemoryBudget(MemoryBudget)}.
+ */
+public class MemoryBudget {
+
+    // the semaphore counts kilobytes so large heaps fit in an int
+    private static final int UNIT = 1024;
+    // how often a waiting page checks its cancellation token and wall time
+    private static final long POLL_MILLIS = 100;
+
+    private final int totalUnits;
+    private final Semaphore available;
+
+    /**
+     * @param maxBytes the amount of heap redactions may use between them, e.g. 60% of -Xmx
+     */
+    public MemoryBudget(long maxBytes) {
+        this.totalUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / UNIT));
+        this.available = new Semaphore(totalUnits, true);
+    }
+
+    /**
+     * Wait until the estimated number of bytes is available.  An estimate larger than the whole budget
+     * waits for the whole budget, i.e. runs on its own, rather than never running at all.
+     *
+     * @param bytes the estimated number of bytes needed
+     * @return the number of units acquired, to be handed back to {@link #release(int)}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public int acquire(long bytes) throws InterruptedException {
+        int units = units(bytes);
+        available.acquire(units);
+        return units;
+    }
+
+    /**
+     * @return the number of bytes not in use
+     */
+    public long getAvailableBytes() {
+        return (long) available.availablePermits() * UNIT;
+    }
+
+    /**
+     * hand back what {@link #acquire(long)} gave
+     */
+    public void release(int units) {
+        if (units > 0) {
+            available.release(units);
+        }
+    }
+
+    /**
+     * wait for memory while still honouring the cancellation token and wall time of a redaction
+     */
+    int acquire(long bytes, BudgetTracker tracker) throws InterruptedException {
+        int units = units(bytes);
+        while (!available.tryAcquire(units, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            tracker.check();
+        }
+        return units;
+    }
+
+    private int units(long bytes) {
+        return (int) Math.max(1, Math.min(totalUnits, (bytes + UNIT - 1) / UNIT));
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Estimates the peak heap needed to redact a page or document from the image dictionaries and content stream
+ * lengths alone, without decoding anything.  The estimates are deliberately on the high side.
+ * <ul>
+ *     <li>an image costs its raw samples (width x height x components x bits per component), plus the
+ *     decoded {@link java.awt.image.BufferedImage} and a copy of that for re-encoding</li>
+ *     <li>only one image is decoded at a time, so a page costs its largest image</li>
+ *     <li>a parsed content stream costs about {@link #CONTENT_STREAM_FACTOR} times its encoded size</li>
+ * </ul>
+ */
+public class MemoryEstimator {
+
+    // parsed tokens and text positions compared to the (compressed) content stream
+    static final int CONTENT_STREAM_FACTOR = 20;
+    // fixed overhead per page (text stripper, graphics state, output streams)
+    static final long PAGE_OVERHEAD = 256 * 1024;
+
+    private MemoryEstimator() {
+    }
+
+    /**
+     * @param page the page to estimate
+     * @return the estimated peak heap in bytes to redact the page
+     */
+    public static long estimatePage(PDPage page) {
+        if (page == null) return 0;
+        long contentBytes = 0;
+        try {
+            Iterator<PDStream> streams = page.getContentStreams();
+            while (streams.hasNext()) {
+                contentBytes += streams.next().getCOSObject().getLength();
+            }
+        } catch (Exception e) {
+            // can't read it, won't cost anything
+        }
+        long largestImage = 0;
+        PDResources resources = page.getResources();
+        if (resources != null) {
+            largestImage = largestImage(resources.getCOSObject());
+        }
+        return PAGE_OVERHEAD + contentBytes * CONTENT_STREAM_FACTOR + largestImage;
+    }
+
+    /**
+     * Pages are redacted one after the other, so the peak for a document is that of its most expensive page.
+     *
+     * @param document the document to estimate
+     * @return the estimated peak heap in bytes to redact the document (on top of the loaded document itself)
+     */
+    public static long estimateDocument(PDDocument document) {
+        if (document == null) return 0;
+        long peak = 0;
+        for (PDPage page : document.getPages()) {
+            peak = Math.max(peak, estimatePage(page));
+        }
+        return peak;
+    }
+
+    /**
+     * Walk the XObjects of a resource dictionary, and those of any forms inside it, looking at the image
+     * dictionaries only.
+     */
+    private static long largestImage(COSDictionary resources) {
+        long largest = 0;
+        Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<COSDictionary> todo = new ArrayDeque<>();
+        todo.push(resources);
+        while (!todo.isEmpty()) {
+            COSDictionary xObjects = todo.pop().getCOSDictionary(COSName.XOBJECT);
+            if (xObjects == null) continue;
+            for (COSName name : xObjects.keySet()) {
+                COSBase base = xObjects.getDictionaryObject(name);
+                if (!(base instanceof COSStream stream) || !seen.add(stream)) continue;
+                COSName subType = stream.getCOSName(COSName.SUBTYPE);
+                if (COSName.IMAGE.equals(subType)) {
+                    largest = Math.max(largest, estimateImage(stream));
+                } else if (COSName.FORM.equals(subType)) {
+                    COSDictionary formResources = stream.getCOSDictionary(COSName.RESOURCES);
+                    if (formResources != null) {
+                        todo.push(formResources);
+                    }
+                }
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @param image the image dictionary
+     * @return the estimated heap needed to decode, mask and re-encode the image
+     */
+    static long estimateImage(COSDictionary image) {
+        long width = Math.max(0, image.getInt(COSName.WIDTH, image.getInt(COSName.W, 0)));
+        long height = Math.max(0, image.getInt(COSName.HEIGHT, image.getInt(COSName.H, 0)));
+        int bitsPerComponent = image.getInt(COSName.BITS_PER_COMPONENT, image.getInt(COSName.BPC, 8));
+        if (bitsPerComponent <= 0) bitsPerComponent = 8;
+        int components = components(image);
+
+        long raw = ((width * components * bitsPerComponent + 7) / 8) * height;
+        // getImage() gives a 1 byte per pixel raster for grey scale, and an int per pixel for everything else
+        long decoded = width * height * (components == 1 ? 1 : 4);
+        return raw + decoded * 2;
+    }
+
+    /**
+     * the number of colour components of an image, from the name of its colour space, without loading it
+     */
+    private static int components(COSDictionary image) {
+        if (image.getBoolean(COSName.IMAGE_MASK, false)) return 1;
+        COSBase colourSpace = image.getDictionaryObject(COSName.COLORSPACE, COSName.CS);
+        if (colourSpace instanceof COSName name) {
+            if (COSName.DEVICEGRAY.equals(name) || COSName.G.equals(name)) return 1;
+            if (COSName.DEVICECMYK.equals(name) || COSName.CMYK.equals(name)) return 4;
+        }
+        // RGB, indexed, ICC and anything else: assume the worst common case
+        return 3;
+    }
+
+}
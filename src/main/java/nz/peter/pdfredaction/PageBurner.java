@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.multipdf.PageExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replaces the content of a page with an image of the page ("burn-in"), for pages where the text can't be
+ * reliably scrubbed from the content stream (broken ToUnicode maps, Type3 fonts).  The redaction boxes must
+ * already be drawn on the page.
+ * <p>
+ * The page is rendered in horizontal strips on a thread pool, each strip is encoded on its own and drawn as a
+ * separate image, so the full page raster never exists in memory.  A PDDocument can't be rendered from several
+ * threads, so the page is copied into a small stand-alone document that each thread loads for itself.
+ * Mono pages are encoded as 1-bit CCITT G4, everything else as lossless Flate.
+ */
+class PageBurner {
+
+    // smallest strip we'll render, below this the per strip overhead dominates
+    private static final int MIN_STRIP_HEIGHT = 16;
+
+    private final float dpi;
+    private final boolean mono;
+    private final long memoryLimit;
+    private final int threads;
+    private ParallelDeflater deflater = null; // optional multithreaded compression of colour strips
+
+    /**
+     * @param dpi the resolution of the page image
+     * @param mono if true render and encode in black and white (CCITT G4), otherwise in colour
+     * @param memoryLimit the number of bytes all strip rasters together may use
+     * @param threads the number of strips rendered at the same time
+     */
+    PageBurner(float dpi, boolean mono, long memoryLimit, int threads) {
+        this.dpi = dpi > 0 ? dpi : 150;
+        this.mono = mono;
+        this.memoryLimit = memoryLimit;
+        this.threads = Math.max(1, threads);
+    }
+
+    void setDeflater(ParallelDeflater deflater) {
+        this.deflater = deflater;
+    }
+
+    /**
+     * replace the content of a page with an image of itself
+     *
+     * @param document the document the page belongs to
+     * @param page the page
+     * @param pageNum the 1-based number of the page in the document
+     * @throws IOException if the page can't be rendered
+     */
+    void burnIn(PDDocument document, PDPage page, int pageNum) throws IOException {
+        // a stand-alone copy of just this page, for the rendering threads to load
+        byte[] pageBytes;
+        try (PDDocument single = new PageExtractor(document, pageNum, pageNum).extract()) {
+            // render in the unrotated page space, the page keeps its /Rotate
+            single.getPage(0).setRotation(0);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            single.save(out);
+            pageBytes = out.toByteArray();
+        }
+
+        PDRectangle cropBox = page.getCropBox();
+        float scale = dpi / 72f;
+        int widthPx = Math.max(1, (int) Math.ceil(cropBox.getWidth() * scale));
+        int heightPx = Math.max(1, (int) Math.ceil(cropBox.getHeight() * scale));
+
+        // strip height from the memory limit: every thread holds one strip raster
+        long bytesPerRow = mono ? (widthPx + 7) / 8 : (long) widthPx * 4;
+        long rowsAllowed = memoryLimit > 0 ? memoryLimit / (threads * bytesPerRow) : heightPx;
+        int stripHeight = (int) Math.max(MIN_STRIP_HEIGHT, Math.min(heightPx, rowsAllowed));
+        int numStrips = (heightPx + stripHeight - 1) / stripHeight;
+
+        COSStream[] strips = new COSStream[numStrips];
+        int numThreads = Math.min(threads, numStrips);
+        if (numThreads == 1) {
+            renderStrips(pageBytes, 0, 1, stripHeight, widthPx, heightPx, scale, strips);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (int t = 0; t < numThreads; t++) {
+                    final int first = t;
+                    futures.add(executor.submit(() -> {
+                        renderStrips(pageBytes, first, numThreads, stripHeight, widthPx, heightPx, scale, strips);
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("burn-in interrupted", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException ioException) throw ioException;
+                throw new IOException(ex.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        // the page is now only its strips: new resources, new content, no annotations
+        PDResources resources = new PDResources();
+        page.setResources(resources);
+        page.setAnnotations(new ArrayList<>());
+        try (PDPageContentStream contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, true)) {
+            for (int i = 0; i < numStrips; i++) {
+                int y0 = i * stripHeight;
+                int h = Math.min(stripHeight, heightPx - y0);
+                PDImageXObject image = new PDImageXObject(new PDStream(strips[i]), null);
+                // strips run top down, PDF space runs bottom up
+                float x = cropBox.getLowerLeftX();
+                float y = cropBox.getUpperRightY() - (y0 + h) / scale;
+                contentStream.drawImage(image, x, y, widthPx / scale, h / scale);
+            }
+        }
+    }
+
+    /**
+     * Render and encode strips first, first + step, first + 2 * step, ... of the page.
+     */
+    private void renderStrips(
+            byte[] pageBytes,
+            int first,
+            int step,
+            int stripHeight,
+            int widthPx,
+            int heightPx,
+            float scale,
+            COSStream[] strips
+    ) throws IOException {
+        try (PDDocument single = Loader.loadPDF(pageBytes); PDDocument scratch = new PDDocument()) {
+            PDFRenderer renderer = new PDFRenderer(single);
+            for (int i = first; i < strips.length; i += step) {
+                int y0 = i * stripHeight;
+                int h = Math.min(stripHeight, heightPx - y0);
+                BufferedImage strip = new BufferedImage(widthPx, h, mono ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_INT_RGB);
+                Graphics2D g2d = strip.createGraphics();
+                // the renderer clears with the background colour, which is black by default
+                g2d.setBackground(Color.WHITE);
+                g2d.clearRect(0, 0, widthPx, h);
+                g2d.translate(0, -y0);
+                renderer.renderPageToGraphics(0, g2d, scale);
+                g2d.dispose();
+
+                PDImageXObject encoded = mono
+                        ? CCITTFactory.createFromImage(scratch, strip)
+                        : deflater != null ? deflater.createImage(scratch, strip) : LosslessFactory.createFromImage(scratch, strip);
+                strips[i] = detach(encoded.getCOSObject());
+            }
+        }
+    }
+
+    /**
+     * copy an encoded image stream out of the scratch document it was created in
+     */
+    private static COSStream detach(COSStream source) throws IOException {
+        COSStream stream = new COSStream();
+        for (Map.Entry<COSName, COSBase> entry : source.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                stream.setItem(entry.getKey(), entry.getValue());
+            }
+        }
+        try (InputStream in = source.createRawInputStream(); OutputStream out = stream.createRawOutputStream()) {
+            in.transferTo(out);
+        }
+        return stream;
+    }
+
+}
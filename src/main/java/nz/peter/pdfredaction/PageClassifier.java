@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cheap look at what a page is made of, from its resource dictionaries and the size of its content, without
+ * interpreting it, so each page only goes through the stages it needs: a page without fonts (a scan) has no text
+ * to find or scrub, a page without images has none to mask.
+ * <p>
+ * The answers err on the side of running a stage: resources inherited from the page tree may be shared by pages
+ * that don't use them, and Type 3 fonts and patterns (which can draw images) count as images.  Inline images have
+ * no resource, the content (and that of the page's forms) is scanned for the {@code BI} operator; only if there
+ * are no image XObjects, and only when asked.
+ */
+public final class PageClassifier {
+
+    /**
+     * what a page is made of
+     */
+    public enum Kind {
+        TEXT,   // fonts, no images: born digital
+        IMAGES, // images, no fonts: scanned
+        MIXED,  // both
+        EMPTY,  // neither: vector graphics only, or blank
+        UNSCANNED // fonts or content, but no image resources, and not scanned for inline images
+    }
+
+    /**
+     * the classification of one page
+     */
+    public static class Classification {
+        private final PDPage page;
+        private final boolean fonts;
+        private final boolean imageResources; // image XObjects, Type 3 fonts or patterns
+        private final List<COSStream> forms;
+        private final long contentLength; // encoded bytes of the page's content streams
+        private Boolean inlineImages = null; // scanned for on demand
+
+        Classification(PDPage page, boolean fonts, boolean imageResources, List<COSStream> forms, long contentLength) {
+            this.page = page;
+            this.fonts = fonts;
+            this.imageResources = imageResources;
+            this.forms = forms;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * @return true if the page can show text, it has fonts and content
+         */
+        public boolean hasText() {
+            return fonts && contentLength > 0;
+        }
+
+        /**
+         * @return true if the page can draw images: image XObjects, or inline images in its content
+         */
+        public boolean hasImages() {
+            if (imageResources) return true;
+            if (inlineImages == null) {
+                inlineImages = contentLength > 0 && hasInlineImages(page, forms);
+            }
+            return inlineImages;
+        }
+
+        /**
+         * @return what the page is made of, scanning its content for inline images if it must
+         */
+        public Kind getKind() {
+            boolean text = hasText();
+            boolean images = hasImages();
+            if (text) return images ? Kind.MIXED : Kind.TEXT;
+            return images ? Kind.IMAGES : Kind.EMPTY;
+        }
+
+        /**
+         * @return what the page is made of as far as is known without scanning its content, UNSCANNED if only a
+         *         scan for inline images can tell
+         */
+        public Kind getKnownKind() {
+            if (!imageResources && inlineImages == null && contentLength > 0) return Kind.UNSCANNED;
+            return getKind();
+        }
+    }
+
+    private PageClassifier() {
+    }
+
+    /**
+     * Classify a page from its resources: fonts, image XObjects and forms (and theirs).
+     *
+     * @param page the page
+     * @return what the page is made of
+     */
+    public static Classification classify(PDPage page) {
+        long contentLength = contentLength(page);
+
+        boolean fonts = false;
+        boolean imageResources = false;
+        List<COSStream> forms = new ArrayList<>();
+        PDResources resources = page.getResources();
+        if (resources != null) {
+            Set<COSBase> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<COSDictionary> todo = new ArrayDeque<>();
+            todo.push(resources.getCOSObject());
+            while (!todo.isEmpty()) {
+                COSDictionary current = todo.pop();
+                COSDictionary fontDictionary = current.getCOSDictionary(COSName.FONT);
+                if (fontDictionary != null && fontDictionary.size() > 0) {
+                    fonts = true;
+                    for (COSName name : fontDictionary.keySet()) {
+                        if (fontDictionary.getDictionaryObject(name) instanceof COSDictionary font
+                                && COSName.TYPE3.equals(font.getCOSName(COSName.SUBTYPE))) {
+                            imageResources = true;
+                        }
+                    }
+                }
+                COSDictionary patterns = current.getCOSDictionary(COSName.PATTERN);
+                if (patterns != null && patterns.size() > 0) {
+                    imageResources = true;
+                }
+                COSDictionary xObjects = current.getCOSDictionary(COSName.XOBJECT);
+                if (xObjects == null) continue;
+                for (COSName name : xObjects.keySet()) {
+                    COSBase base = xObjects.getDictionaryObject(name);
+                    if (!(base instanceof COSStream stream) || !seen.add(stream)) continue;
+                    COSName subType = stream.getCOSName(COSName.SUBTYPE);
+                    if (COSName.IMAGE.equals(subType)) {
+                        imageResources = true;
+                    } else if (COSName.FORM.equals(subType)) {
+                        forms.add(stream);
+                        COSDictionary formResources = stream.getCOSDictionary(COSName.RESOURCES);
+                        if (formResources != null) {
+                            todo.push(formResources);
+                        }
+                    }
+                }
+            }
+        }
+        return new Classification(page, fonts, imageResources, forms, contentLength);
+    }
+
+    /**
+     * @return the encoded bytes of the page's content streams, 1 if that can't be told
+     */
+    static long contentLength(PDPage page) {
+        long contentLength = 0;
+        try {
+            Iterator<PDStream> streams = page.getContentStreams();
+            while (streams.hasNext()) {
+                contentLength += streams.next().getCOSObject().getLength();
+            }
+        } catch (Exception e) {
+            contentLength = 1; // can't tell, have it looked at
+        }
+        return contentLength;
+    }
+
+    /**
+     * look for a BI operator, on its own between whitespace or delimiters, in the decoded content of the page
+     * and its forms.  A BI in a string is taken for an image too.
+     */
+    private static boolean hasInlineImages(PDPage page, List<COSStream> forms) {
+        try {
+            Iterator<PDStream> streams = page.getContentStreams();
+            while (streams.hasNext()) {
+                try (InputStream in = streams.next().createInputStream()) {
+                    if (containsInlineImage(in)) return true;
+                }
+            }
+            for (COSStream form : forms) {
+                try (InputStream in = form.createInputStream()) {
+                    if (containsInlineImage(in)) return true;
+                }
+            }
+            return false;
+        } catch (IOException | RuntimeException ex) {
+            return true; // can't tell, have it looked at
+        }
+    }
+
+    static boolean containsInlineImage(InputStream stream) throws IOException {
+        InputStream in = new BufferedInputStream(stream, 1 << 16);
+        int previous = ' ';
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == 'B' && isSeparator(previous)) {
+                int next = in.read();
+                if (next == 'I') {
+                    int after = in.read();
+                    if (after == -1 || isSeparator(after)) return true;
+                    b = after;
+                } else if (next == -1) {
+                    break;
+                } else {
+                    b = next;
+                }
+            }
+            previous = b;
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(int b) {
+        switch (b) {
+            case 0, 9, 10, 12, 13, 32, '(', ')', '<', '>', '[', ']', '{', '}', '/', '%':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
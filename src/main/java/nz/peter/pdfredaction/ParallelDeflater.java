@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Flate (zlib) encoding on several cores, for re-encoded scans and large rewritten content streams, where a
+ * single-threaded deflate dominates the wall time.  The data is cut into blocks that are compressed independently
+ * (as pigz --independent does), each ending on a byte boundary, and joined into one valid zlib stream with a
+ * single header and a checksum combined from those of the blocks.  Any Flate decoder reads it.
+ * <p>
+ * Images are encoded with PNG predictors, the best filter chosen per row, which is done in the same parallel
+ * tasks as the compression.  Data smaller than two blocks is compressed in the calling thread.
+ * <p>
+ * Install with {@link RedactionOptions#setDeflater(ParallelDeflater)}, one instance can be shared by all
+ * redactions; its threads are daemons.
+ */
+public class ParallelDeflater implements AutoCloseable {
+
+    // the largest prime below 2^16, the modulus of Adler-32
+    private static final int ADLER_BASE = 65521;
+
+    private final int threads;
+    private final int level;
+    private final int blockSize;
+    private ExecutorService executor = null; // created on first use
+
+    /**
+     * @param threads the number of blocks compressed at the same time
+     * @param level the compression level, 0 (none) to 9 (best), or -1 for the default (6)
+     * @param blockSize the number of bytes per block, e.g. 128KB (blocks lose a little compression at their start)
+     */
+    public ParallelDeflater(int threads, int level, int blockSize) {
+        this.threads = Math.max(1, threads);
+        this.level = level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION ? level : Deflater.DEFAULT_COMPRESSION;
+        this.blockSize = Math.max(32 * 1024, blockSize);
+    }
+
+    /**
+     * Compress data into a zlib stream.
+     *
+     * @param data the data
+     * @return the zlib stream
+     * @throws IOException if interrupted
+     */
+    public byte[] deflate(byte[] data) throws IOException {
+        if (data.length < 2L * blockSize || threads == 1) {
+            return deflateSerially(data);
+        }
+        int numBlocks = (data.length + blockSize - 1) / blockSize;
+        return deflateBlocks(numBlocks, data.length, b -> {
+            int from = b * blockSize;
+            int to = Math.min(data.length, from + blockSize);
+            return compressBlock(data, from, to, b == numBlocks - 1);
+        });
+    }
+
+    /**
+     * Compress an image, filtered with PNG predictors, as a zlib stream.
+     *
+     * @param source the rows of the image
+     * @param height the number of rows
+     * @param rowBytes the number of bytes of a row
+     * @param bytesPerPixel the number of bytes of a pixel, what the predictors look back by
+     * @return the zlib stream of the filtered rows, each starting with its filter type
+     * @throws IOException if interrupted
+     */
+    byte[] deflateRows(RowSource source, int height, int rowBytes, int bytesPerPixel) throws IOException {
+        int rowsPerBlock = Math.max(1, blockSize / (rowBytes + 1));
+        int numBlocks = (height + rowsPerBlock - 1) / rowsPerBlock;
+        if (numBlocks < 2 || threads == 1) {
+            byte[] filtered = new RowFilter(source, rowBytes, bytesPerPixel).filter(0, height);
+            return deflateSerially(filtered);
+        }
+        return deflateBlocks(numBlocks, (long) height * (rowBytes + 1), b -> {
+            int from = b * rowsPerBlock;
+            int to = Math.min(height, from + rowsPerBlock);
+            byte[] filtered = new RowFilter(source, rowBytes, bytesPerPixel).filter(from, to);
+            return compressBlock(filtered, 0, filtered.length, b == numBlocks - 1);
+        });
+    }
+
+    /**
+     * Create a Flate encoded image, with PNG predictors, as {@link LosslessFactory#createFromImage} would: 8-bit
+     * grey or RGB, with a soft mask for the alpha channel.  Other images (1-bit, indexed with few colours) are
+     * left to LosslessFactory, they're small.
+     *
+     * @param document the document the image is for
+     * @param image the image
+     * @return the image object
+     * @throws IOException if the image can't be encoded
+     */
+    public PDImageXObject createImage(PDDocument document, BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getColorModel().getPixelSize() < 8) {
+            return LosslessFactory.createFromImage(document, image);
+        }
+        boolean grey = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int components = grey ? 1 : 3;
+
+        byte[] pixels = deflateRows((y, row) -> {
+            if (grey) {
+                image.getRaster().getDataElements(0, y, width, 1, row);
+                return;
+            }
+            int[] rgb = image.getRGB(0, y, width, 1, null, 0, width);
+            for (int x = 0, i = 0; x < width; x++) {
+                row[i++] = (byte) (rgb[x] >> 16);
+                row[i++] = (byte) (rgb[x] >> 8);
+                row[i++] = (byte) rgb[x];
+            }
+        }, height, width * components, components);
+        PDImageXObject imageObject = createImageObject(document, pixels, width, height, components,
+                grey ? PDDeviceGray.INSTANCE : PDDeviceRGB.INSTANCE);
+
+        if (image.getColorModel().hasAlpha()) {
+            byte[] alpha = deflateRows((y, row) -> {
+                int[] argb = image.getRGB(0, y, width, 1, null, 0, width);
+                for (int x = 0; x < width; x++) {
+                    row[x] = (byte) (argb[x] >>> 24);
+                }
+            }, height, width, 1);
+            PDImageXObject mask = createImageObject(document, alpha, width, height, 1, PDDeviceGray.INSTANCE);
+            imageObject.getCOSObject().setItem(COSName.SMASK, mask);
+        }
+        return imageObject;
+    }
+
+    /**
+     * Write a content stream, compressed with a deflater or, without one, by PDFBox.
+     *
+     * @param document the document the stream is for
+     * @param tokens the operators and operands of the stream
+     * @param deflater the deflater, can be null
+     * @return the new stream
+     * @throws IOException if the stream can't be written
+     */
+    static PDStream contentStream(PDDocument document, List<Object> tokens, ParallelDeflater deflater) throws IOException {
+        PDStream stream = new PDStream(document);
+        if (deflater == null) {
+            try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                new ContentStreamWriter(out).writeTokens(tokens);
+            }
+            return stream;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        new ContentStreamWriter(content).writeTokens(tokens);
+        deflater.write(stream.getCOSObject(), content.toByteArray());
+        return stream;
+    }
+
+    /**
+     * Set the data of a stream, Flate compressed.
+     *
+     * @param stream the stream
+     * @param data its decoded data
+     * @throws IOException if the stream can't be written
+     */
+    public void write(COSStream stream, byte[] data) throws IOException {
+        byte[] encoded = deflate(data);
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(encoded);
+        }
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+    }
+
+    private PDImageXObject createImageObject(PDDocument document, byte[] encoded, int width, int height,
+                                             int components, PDColorSpace colorSpace) throws IOException {
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(encoded),
+                COSName.FLATE_DECODE, width, height, 8, colorSpace);
+        COSDictionary decodeParms = new COSDictionary();
+        decodeParms.setInt(COSName.PREDICTOR, 15); // PNG, optimum (the filter of each row is in the row)
+        decodeParms.setInt(COSName.COLORS, components);
+        decodeParms.setInt(COSName.BITS_PER_COMPONENT, 8);
+        decodeParms.setInt(COSName.COLUMNS, width);
+        image.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+        return image;
+    }
+
+    /**
+     * a compressed block: raw deflate data ending on a byte boundary, and the Adler-32 of its input
+     */
+    private static class Block {
+        private final byte[] data;
+        private final long adler;
+        private final long length;
+
+        Block(byte[] data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    private interface BlockTask {
+        Block compress(int block) throws IOException;
+    }
+
+    /**
+     * supplies the bytes of row y of an image
+     */
+    interface RowSource {
+        void row(int y, byte[] row);
+    }
+
+    /**
+     * compress blocks in parallel, then join them behind a zlib header
+     */
+    private byte[] deflateBlocks(int numBlocks, long expectedLength, BlockTask task) throws IOException {
+        List<Future<Block>> futures = new ArrayList<>(numBlocks);
+        ExecutorService pool = executor();
+        for (int b = 0; b < numBlocks; b++) {
+            final int block = b;
+            futures.add(pool.submit(() -> task.compress(block)));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, expectedLength / 2 + 64));
+        writeHeader(out);
+        long adler = 1;
+        try {
+            for (Future<Block> future : futures) {
+                Block block = future.get();
+                out.write(block.data);
+                adler = combineAdler(adler, block.adler, block.length);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("compression interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) throw ioException;
+            throw new IOException(ex.getCause());
+        } finally {
+            for (Future<Block> future : futures) {
+                future.cancel(true);
+            }
+        }
+        out.write((int) (adler >>> 24));
+        out.write((int) (adler >>> 16));
+        out.write((int) (adler >>> 8));
+        out.write((int) adler);
+        return out.toByteArray();
+    }
+
+    /**
+     * Raw deflate a block, flushed to a byte boundary so the next one can follow it; only the last is final.
+     */
+    private Block compressBlock(byte[] data, int from, int to, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, from, to - from);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((to - from) / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            Adler32 adler = new Adler32();
+            adler.update(data, from, to - from);
+            return new Block(out.toByteArray(), adler.getValue(), to - from);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] deflateSerially(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        Deflater deflater = new Deflater(level);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater, 64 * 1024)) {
+            stream.write(data);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * the two byte zlib header: deflate with a 32K window, and the level it was compressed with
+     */
+    private void writeHeader(OutputStream out) throws IOException {
+        int levelFlag;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) levelFlag = 2;
+        else if (level <= 1) levelFlag = 0;
+        else if (level <= 5) levelFlag = 1;
+        else levelFlag = 3;
+        int cmf = 0x78;
+        int flg = levelFlag << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        out.write(cmf);
+        out.write(flg);
+    }
+
+    /**
+     * The Adler-32 of two pieces of data joined, from their own checksums (zlib's adler32_combine).
+     *
+     * @param adler1 the checksum of the first piece
+     * @param adler2 the checksum of the second piece
+     * @param length2 the length of the second piece
+     * @return the checksum of both
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= 2L * ADLER_BASE) sum2 -= 2L * ADLER_BASE;
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "parallel-deflate");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * stop the threads, the deflater can't be used after this
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Filters rows with the PNG predictors, choosing per row the filter with the smallest sum of absolute
+     * (signed) differences, the usual heuristic.
+     */
+    private static class RowFilter {
+        private final RowSource source;
+        private final int rowBytes;
+        private final int bpp;
+
+        RowFilter(RowSource source, int rowBytes, int bytesPerPixel) {
+            this.source = source;
+            this.rowBytes = rowBytes;
+            this.bpp = bytesPerPixel;
+        }
+
+        /**
+         * @return rows from..to-1 filtered, each preceded by its filter type
+         */
+        byte[] filter(int from, int to) {
+            byte[] out = new byte[(to - from) * (rowBytes + 1)];
+            byte[] previous = new byte[rowBytes]; // all zero above the first row
+            byte[] current = new byte[rowBytes];
+            byte[][] candidates = new byte[5][rowBytes];
+            if (from > 0) source.row(from - 1, previous);
+            int o = 0;
+            for (int y = from; y < to; y++) {
+                source.row(y, current);
+                int best = 0;
+                long bestSum = Long.MAX_VALUE;
+                for (int type = 0; type < 5; type++) {
+                    long sum = apply(type, current, previous, candidates[type]);
+                    if (sum < bestSum) {
+                        bestSum = sum;
+                        best = type;
+                    }
+                }
+                out[o++] = (byte) best;
+                System.arraycopy(candidates[best], 0, out, o, rowBytes);
+                o += rowBytes;
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return out;
+        }
+
+        /**
+         * filter a row with one of the five PNG filters
+         *
+         * @return the sum of the absolute values of the filtered bytes
+         */
+        private long apply(int type, byte[] row, byte[] above, byte[] out) {
+            long sum = 0;
+            for (int i = 0; i < rowBytes; i++) {
+                int x = row[i] & 0xFF;
+                int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                int b = above[i] & 0xFF;
+                int c = i >= bpp ? above[i - bpp] & 0xFF : 0;
+                int predicted = switch (type) {
+                    case 1 -> a;
+                    case 2 -> b;
+                    case 3 -> (a + b) >> 1;
+                    case 4 -> paeth(a, b, c);
+                    default -> 0;
+                };
+                byte value = (byte) (x - predicted);
+                out[i] = value;
+                sum += Math.abs(value);
+            }
+            return sum;
+        }
+
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) return a;
+            return pb <= pc ? b : c;
+        }
+    }
+
+}
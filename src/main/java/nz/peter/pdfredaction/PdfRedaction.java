@@ -14,11 +14,10 @@ package nz.peter.pdfredaction;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
 import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.pdfparser.PDFStreamParser;
-import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
 import org.apache.pdfbox.pdmodel.*;
-import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.contentstream.operator.Operator;
 import java.io.ByteArrayInputStream;
@@ -26,7 +25,6 @@ import java.io.InputStream;
 
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -56,65 +54,280 @@ public class PdfRedaction {
             List<RectangleOnPage> areas,
             boolean outlineOnly
     ) throws IOException {
+        redact(document, words, areas, outlineOnly, null);
+    }
+
+
+    /**
+     * Redacts specified words and/or rectangular areas from a PDF document, subject to the budgets and
+     * cancellation token of the supplied options.  When a budget is exceeded, or the redaction is cancelled,
+     * processing stops at the next page, token or image boundary and the returned result says whether
+     * the document was left untouched (REJECTED) or part-way redacted (PARTIAL).
+     *
+     * @param document The PDF document to be redacted.
+     * @param words A list of words to be redacted from the document. Can be null or empty.
+     * @param areas A list of rectangular areas to be redacted. Can be null or empty.
+     * @param outlineOnly If true, only outline rectangles will be drawn over the redacted areas.
+     * @param options optional settings (budgets, cancellation), can be null.
+     * @return the outcome of the redaction.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionResult redact(
+            PDDocument document,
+            List<String> words,
+            List<RectangleOnPage> areas,
+            boolean outlineOnly,
+            RedactionOptions options
+    ) throws IOException {
+        if (document == null) return new RedactionResult();
+        return redact(document, 1, document.getNumberOfPages(), words, areas, outlineOnly, options);
+    }
+
+
+    /**
+     * Redacts specified words and/or rectangular areas from a range of pages of a PDF document, leaving all
+     * other pages untouched.  Used to spread a very large document across several machines: each one redacts
+     * its own range, extracts it with {@link PdfShards#extractPages(PDDocument, int, int)} and the
+     * resulting shards are joined again with {@link PdfShards#merge(List)}.
+     *
+     * @param document The PDF document to be redacted.
+     * @param pageFrom The first page to redact (1-based, inclusive).
+     * @param pageTo The last page to redact (1-based, inclusive).
+     * @param words A list of words to be redacted from the pages. Can be null or empty.
+     * @param areas A list of rectangular areas to be redacted, page numbers are those of the whole document.
+     *              Areas outside the range are ignored. Can be null or empty.
+     * @param outlineOnly If true, only outline rectangles will be drawn over the redacted areas.
+     * @param options optional settings (budgets, cancellation), can be null.  The page limit of a budget
+     *                applies to the number of pages in the range.
+     * @return the outcome of the redaction, page counts are those of the range.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionResult redact(
+            PDDocument document,
+            int pageFrom,
+            int pageTo,
+            List<String> words,
+            List<RectangleOnPage> areas,
+            boolean outlineOnly,
+            RedactionOptions options
+    ) throws IOException {
+        return redactAreas(document, pageFrom, pageTo, words, areas != null ? RedactionAreas.fromList(areas) : null, outlineOnly, options);
+    }
+
+
+    /**
+     * Redacts specified words and/or rectangular areas from a PDF document, with the areas in columnar form
+     * for very large sets of areas.
+     *
+     * @param document The PDF document to be redacted.
+     * @param words A list of words to be redacted from the document. Can be null or empty.
+     * @param areas The rectangular areas to be redacted. Can be null or empty.
+     * @param outlineOnly If true, only outline rectangles will be drawn over the redacted areas.
+     * @param options optional settings (budgets, cancellation), can be null.
+     * @return the outcome of the redaction.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionResult redactAreas(
+            PDDocument document,
+            List<String> words,
+            RedactionAreas areas,
+            boolean outlineOnly,
+            RedactionOptions options
+    ) throws IOException {
+        if (document == null) return new RedactionResult();
+        return redactAreas(document, 1, document.getNumberOfPages(), words, areas, outlineOnly, options);
+    }
+
+
+    /**
+     * Redacts specified words and/or rectangular areas from a range of pages of a PDF document, with the
+     * areas in columnar form.  See {@link #redact(PDDocument, int, int, List, List, boolean, RedactionOptions)}.
+     *
+     * @param document The PDF document to be redacted.
+     * @param pageFrom The first page to redact (1-based, inclusive).
+     * @param pageTo The last page to redact (1-based, inclusive).
+     * @param words A list of words to be redacted from the pages. Can be null or empty.
+     * @param areas The rectangular areas to be redacted, areas outside the range are ignored. Can be null or empty.
+     * @param outlineOnly If true, only outline rectangles will be drawn over the redacted areas.
+     * @param options optional settings (budgets, cancellation), can be null.
+     * @return the outcome of the redaction, page counts are those of the range.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionResult redactAreas(
+            PDDocument document,
+            int pageFrom,
+            int pageTo,
+            List<String> words,
+            RedactionAreas areas,
+            boolean outlineOnly,
+            RedactionOptions options
+    ) throws IOException {
+        RedactionResult result = new RedactionResult();
         // null? - just ignore it
-        if (document == null) return;
-        // nothing to redact?
-        if (words == null && areas == null) return;
+        if (document == null) return result;
 
-        int numPages = document.getNumberOfPages();
+        int firstPage = Math.max(1, pageFrom);
+        int lastPage = Math.min(document.getNumberOfPages(), pageTo);
+        if (lastPage < firstPage) return result;
+        result.setPageCount(lastPage - firstPage + 1);
 
-        for (int i = 0; i < numPages; i++) {
-            int pageNum = i + 1;
-            PDPage page = document.getPage(i);
-            if (page == null) continue;
+        // nothing to redact?
+        if (words == null && areas == null && (options == null || options.getDictionary() == null)) return result;
 
-            List<Rectangle2D> pageRedactionBoxes = new ArrayList<>();
+        if (options == null) {
+            options = new RedactionOptions();
+        }
+        BudgetTracker tracker = new BudgetTracker(options.getBudget(), options.getCancellationToken());
+        MemoryBudget memoryBudget = options.getMemoryBudget();
+        // a bounded cache stays installed, it keeps the heap flat while the document is saved too
+        if (options.getResourceCache() != null) {
+            document.setResourceCache(options.getResourceCache());
+        }
+        int pagesProcessed = 0;
+        try {
+            tracker.checkPageCount(lastPage - firstPage + 1);
 
-            // Add user-defined coordinate boxes for this page
-            if (areas != null) {
-                for (RectangleOnPage area : areas) {
-                    if (area.getPage() == pageNum) {
-                        pageRedactionBoxes.add(new Rectangle2D.Float(area.getX(), area.getY(), area.getWidth(), area.getHeight()));
+            for (int pageNum = firstPage; pageNum <= lastPage; pageNum++) {
+                PDPage page = document.getPage(pageNum - 1);
+                if (page == null) continue;
+                tracker.checkPage(page);
+
+                // wait until there is enough heap for this page
+                int memoryUnits = 0;
+                if (memoryBudget != null) {
+                    memoryUnits = memoryBudget.acquire(MemoryEstimator.estimatePage(page), tracker);
+                }
+                try {
+                    redactPage(document, page, pageNum, words, areas, outlineOnly, options, tracker, result);
+                } finally {
+                    if (memoryBudget != null) {
+                        memoryBudget.release(memoryUnits);
                     }
                 }
+                result.setPagesProcessed(++pagesProcessed);
             }
 
-            // Find bounding boxes for the requested words
-            if (words != null && !words.isEmpty()) {
-                WordFinder textStripper = new WordFinder(page, words);
-                textStripper.setStartPage(pageNum);
-                textStripper.setEndPage(pageNum);
-                textStripper.getText(document);
-                pageRedactionBoxes.addAll(textStripper.getFoundBoundingBoxes());
-            }
+        } catch (BudgetTracker.BudgetExceededException ex) {
+            result.setOutcome(result.isModified() ? RedactionResult.Outcome.PARTIAL : RedactionResult.Outcome.REJECTED, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result.setOutcome(result.isModified() ? RedactionResult.Outcome.PARTIAL : RedactionResult.Outcome.REJECTED, "interrupted");
+        }
 
-            // nothing to redact?
-            if (pageRedactionBoxes.isEmpty()) {
-                continue;
-            }
+        // once for the whole document, not per page
+        if (result.isModified() && options.getSanitiser() != null) {
+            result.setSanitiserReport(options.getSanitiser().sanitise(document));
+        }
+        return result;
+    }
 
-            // Scrub text from the content stream (Font-Aware & Kerning-Aware)
-            if (!outlineOnly && words != null && !words.isEmpty()) {
-                scrubTextTokens(document, page, words);
-            }
 
-            // Redact overlapping images
-            if (!outlineOnly) {
-                ImageRedactor imageRedactor = new ImageRedactor(document, page, pageRedactionBoxes);
-                imageRedactor.processPage(page);
-            }
+    /**
+     * Redacts the words and areas of a single page.
+     *
+     * @param document The PDF document being redacted.
+     * @param page The page to redact.
+     * @param pageNum The 1-based number of the page.
+     * @param words A list of words to be redacted, can be null.
+     * @param areas A list of rectangular areas to be redacted, only those of this page are used. Can be null.
+     * @param outlineOnly If true, only outline rectangles will be drawn over the redacted areas.
+     * @param options the redaction settings.
+     * @param tracker the resource budget of the document.
+     * @param result marked as modified as soon as the page is about to be changed.
+     * @throws IOException If an error occurs while processing the page.
+     */
+    private void redactPage(
+            PDDocument document,
+            PDPage page,
+            int pageNum,
+            List<String> words,
+            RedactionAreas areas,
+            boolean outlineOnly,
+            RedactionOptions options,
+            BudgetTracker tracker,
+            RedactionResult result
+    ) throws IOException {
+        List<Rectangle2D> pageRedactionBoxes = new ArrayList<>();
 
-            if (outlineOnly) {
-                // Draw outline magenta/purple rectangles over the redacted areas
-                drawPurpleRectangles(document, page, pageRedactionBoxes);
-            } else {
-                // Draw the physical black boxes over the redacted areas
-                drawBlackBoxes(document, page, pageRedactionBoxes);
+        // Add user-defined coordinate boxes for this page
+        if (areas != null) {
+            for (int i = areas.pageStart(pageNum); i < areas.pageEnd(pageNum); i++) {
+                pageRedactionBoxes.add(new Rectangle2D.Float(areas.getX(i), areas.getY(i), areas.getWidth(i), areas.getHeight(i)));
             }
+        }
+
+        // Find bounding boxes for the requested words, on pages that can have text
+        PageClassifier.Classification classification = PageClassifier.classify(page);
+        TermDictionary dictionary = options.getDictionary();
+        boolean findWords = (words != null && !words.isEmpty()) || dictionary != null;
+        if (findWords && !classification.hasText()) {
+            findWords = false;
+            result.textPassSkipped();
+        }
+        DocumentIndex index = options.getDocumentIndex();
+        if (findWords && index != null && index.matches(pageNum, page)) {
+            // answered from the index, pages without hits aren't parsed at all; pages that changed since they
+            // were indexed (or of another document) are extracted again
+            List<Rectangle2D> hits = index.find(pageNum, words, dictionary);
+            pageRedactionBoxes.addAll(hits);
+            findWords = !hits.isEmpty();
+        } else if (findWords) {
+            WordFinder textStripper = new WordFinder(page, words);
+            textStripper.setBudgetTracker(tracker);
+            textStripper.setDictionary(dictionary);
+            textStripper.setStartPage(pageNum);
+            textStripper.setEndPage(pageNum);
+            textStripper.getText(document);
+            pageRedactionBoxes.addAll(textStripper.getFoundBoundingBoxes());
+        }
+
+        // burn-in pages are replaced by an image of themselves, even without any boxes, their text can't be trusted
+        if (!outlineOnly && options.getBurnInPages().contains(pageNum)) {
+            result.setModified();
+            drawBlackBoxes(document, page, pageRedactionBoxes);
+            PageBurner burner = new PageBurner(options.getBurnInDpi(), options.isBurnInMono(),
+                    options.getBurnInMemoryLimit(), options.getBurnInThreads());
+            burner.setDeflater(options.getDeflater());
+            burner.burnIn(document, page, pageNum);
+            result.pageBurnedIn();
+            result.pageClassified(classification.getKnownKind());
+            return;
+        }
+
+        // nothing to redact?
+        if (pageRedactionBoxes.isEmpty()) {
+            result.pageClassified(classification.getKnownKind());
+            return;
+        }
+
+        // from here on the document is being changed
+        result.setModified();
 
-            // Clear the document's metadata
-            clearMetadata(document);
+        // Scrub text from the content stream (Font-Aware & Kerning-Aware)
+        if (!outlineOnly && findWords) {
+            scrubTextTokens(document, page, words, dictionary, tracker, options.getDeflater());
         }
+
+        // Redact overlapping images, on pages that have any
+        if (!outlineOnly && !classification.hasImages()) {
+            result.imagePassSkipped();
+        } else if (!outlineOnly) {
+            ImageRedactor imageRedactor = new ImageRedactor(document, page, pageRedactionBoxes);
+            imageRedactor.setBudgetTracker(tracker);
+            imageRedactor.setDeflater(options.getDeflater());
+            imageRedactor.setImageMemoryLimit(options.getImageMemoryLimit());
+            imageRedactor.processPage(page);
+        }
+
+        if (outlineOnly) {
+            // Draw outline magenta/purple rectangles over the redacted areas
+            drawPurpleRectangles(document, page, pageRedactionBoxes);
+        } else {
+            // Draw the physical black boxes over the redacted areas
+            drawBlackBoxes(document, page, pageRedactionBoxes);
+        }
+        // only scanned for inline images if the image stage needed to know
+        result.pageClassified(classification.getKnownKind());
     }
 
 
@@ -135,48 +348,72 @@ public class PdfRedaction {
         // nothing to redact?
         if (words == null || words.isEmpty()) return Collections.emptyList();
 
+        return getRedactionAreas(document, words).toList();
+    }
+
+
+    /**
+     * Locates the specified words like {@link #getRedactionRectangles(PDDocument, List)}, but returns the
+     * regions in columnar form, for documents with very many matches.
+     *
+     * @param document The PDF document to analyze. If null, no areas are returned.
+     * @param words A list of words to locate in the document. If null or empty, no areas are returned.
+     * @return the regions containing one of the words, in page order.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionAreas getRedactionAreas(PDDocument document, List<String> words) throws IOException {
+        return getRedactionAreas(document, words, null);
+    }
+
+
+    /**
+     * Locates the specified words, and the terms of a compiled dictionary, in columnar form.
+     *
+     * @param document The PDF document to analyze. If null, no areas are returned.
+     * @param words A list of words to locate in the document. Can be null or empty.
+     * @param dictionary A compiled term list to locate in the document. Can be null.
+     * @return the regions containing one of the words or terms, in page order.
+     * @throws IOException If an error occurs while processing the PDF document.
+     */
+    public RedactionAreas getRedactionAreas(PDDocument document, List<String> words, TermDictionary dictionary) throws IOException {
+        // null? - just ignore it
+        if (document == null) return RedactionAreas.empty();
+        // nothing to redact?
+        if ((words == null || words.isEmpty()) && dictionary == null) return RedactionAreas.empty();
+
         int numPages = document.getNumberOfPages();
-        ArrayList<RectangleOnPage> pageRectangles = new ArrayList<>();
+        RedactionAreas.Collector collector = new RedactionAreas.Collector(numPages);
 
         for (int i = 0; i < numPages; i++) {
             int pageNum = i + 1;
             PDPage page = document.getPage(i);
-            if (page == null) continue;
+            if (page == null || !PageClassifier.classify(page).hasText()) continue;
 
             // Find bounding boxes for the requested words
             WordFinder textStripper = new WordFinder(page, words);
+            textStripper.setDictionary(dictionary);
             textStripper.setStartPage(pageNum);
             textStripper.setEndPage(pageNum);
             textStripper.getText(document);
             for (Rectangle2D boundingBox : textStripper.getFoundBoundingBoxes()) {
-                RectangleOnPage rop = new RectangleOnPage(
+                collector.add(
                         pageNum,
                         (float)boundingBox.getX(),
                         (float)boundingBox.getY(),
                         (float)boundingBox.getWidth(),
                         (float)boundingBox.getHeight()
                 );
-                pageRectangles.add(rop);
             }
         }
-        return pageRectangles;
+        return collector.toAreas();
     }
 
 
     /**
      * Completely removes all legacy and XMP metadata from the document.
      */
-    private void clearMetadata(PDDocument document) {
-        // Clear the legacy Document Information Dictionary
-        // (This holds Author, Title, Creator, Producer, CreationDate, etc.)
-        // Replacing it with a brand new, empty object wipes the old dictionary.
-        document.setDocumentInformation(new PDDocumentInformation());
-
-        // Clear the modern XMP Metadata Stream
-        // Setting this to null removes the entire XML metadata stream from the catalog.
-        if (document.getDocumentCatalog() != null) {
-            document.getDocumentCatalog().setMetadata(null);
-        }
+    static void clearMetadata(PDDocument document) {
+        DocumentSanitiser.metadata().sanitise(document);
     }
 
 
@@ -184,7 +421,14 @@ public class PdfRedaction {
      * Advanced stream scrubber that decodes CID fonts and stitches kerning arrays
      * to safely target and remove exact words from the underlying stream.
      */
-    private void scrubTextTokens(PDDocument document, PDPage page, List<String> wordsToScrub) throws IOException {
+    private void scrubTextTokens(
+            PDDocument document,
+            PDPage page,
+            List<String> wordsToScrub,
+            TermDictionary dictionary,
+            BudgetTracker tracker,
+            ParallelDeflater deflater
+    ) throws IOException {
         PDFStreamParser parser = new PDFStreamParser(page);
         List<Object> tokens = parser.parse();
 
@@ -193,12 +437,15 @@ public class PdfRedaction {
 
         List<TokenRef> activeTokens = new ArrayList<>();
         StringBuilder blockText = new StringBuilder();
+        TextCursor cursor = new TextCursor();
 
         for (int i = 0; i < tokens.size(); i++) {
             Object token = tokens.get(i);
 
             if (token instanceof Operator op) {
+                tracker.checkToken();
                 String opName = op.getName();
+                cursor.operator(op, tokens, i);
 
                 if ("Tf".equals(opName) && i >= 2) {
                     COSName fontName = (COSName) tokens.get(i - 2);
@@ -209,35 +456,43 @@ public class PdfRedaction {
                     // Begin Text block: clear the buffer
                     activeTokens.clear();
                     blockText.setLength(0);
-                } else if ("ET".equals(opName) || "Td".equals(opName) || "TD".equals(opName) || "Tm".equals(opName) || "T*".equals(opName)) {
-                    // End of text block or line break: process the buffered sequence
-                    processTextSequence(activeTokens, blockText, wordsToScrub);
+                } else if ("ET".equals(opName)) {
+                    // End of text block: process the buffered sequence
+                    processTextSequence(activeTokens, blockText, wordsToScrub, dictionary);
                     activeTokens.clear();
                     blockText.setLength(0);
                 }
-            } else if (token instanceof COSString) {
-                processCOSString((COSString) token, currentFont, activeTokens, blockText);
-
-            } else if (token instanceof COSArray array) {
-                for (int j = 0; j < array.size(); j++) {
-                    COSBase element = array.get(j);
-                    if (element instanceof COSString) {
-                        processCOSString((COSString) element, currentFont, activeTokens, blockText);
+            } else if (token instanceof COSString || token instanceof COSArray) {
+                // a move to another line (or along it, past a space) ends the sequence, but a Tm or Td that
+                // continues where the last text ended, splitting a word, doesn't
+                if (!cursor.beginShow(tokens, i)) {
+                    processTextSequence(activeTokens, blockText, wordsToScrub, dictionary);
+                    activeTokens.clear();
+                    blockText.setLength(0);
+                }
+                if (token instanceof COSString cosString) {
+                    processCOSString(cosString, currentFont, activeTokens, blockText);
+                    cursor.show(cosString, currentFont);
+                } else {
+                    COSArray array = (COSArray) token;
+                    for (int j = 0; j < array.size(); j++) {
+                        COSBase element = array.get(j);
+                        if (element instanceof COSString cosString) {
+                            processCOSString(cosString, currentFont, activeTokens, blockText);
+                            cursor.show(cosString, currentFont);
+                        } else if (element instanceof COSNumber number) {
+                            cursor.adjust(number.floatValue());
+                        }
                     }
                 }
             }
         }
 
         // Catch any remaining text at the end of the stream
-        processTextSequence(activeTokens, blockText, wordsToScrub);
+        processTextSequence(activeTokens, blockText, wordsToScrub, dictionary);
 
-        // Rewrite the modified tokens back to the page stream
-        PDStream newContents = new PDStream(document);
-        try (OutputStream out = newContents.createOutputStream(COSName.FLATE_DECODE)) {
-            ContentStreamWriter tokenWriter = new ContentStreamWriter(out);
-            tokenWriter.writeTokens(tokens); // Modifications were done in-place
-        }
-        page.setContents(newContents);
+        // Rewrite the modified tokens back to the page stream (modifications were done in-place)
+        page.setContents(ParallelDeflater.contentStream(document, tokens, deflater));
     }
 
 
@@ -264,6 +519,28 @@ public class PdfRedaction {
         // check for nulls
         if (font == null || cosString == null || activeTokens == null || blockText == null) return;
 
+        String decoded = decode(cosString, font);
+        if (decoded != null && !decoded.isEmpty()) {
+            TokenRef ref = new TokenRef();
+            ref.token = cosString;
+            ref.font = font;
+            ref.globalStart = blockText.length();
+            blockText.append(decoded);
+            ref.globalEnd = blockText.length();
+            ref.chars = decoded.toCharArray();
+            activeTokens.add(ref);
+        }
+    }
+
+    /**
+     * Decodes the character codes of a string operand into unicode using the font it is shown with.
+     *
+     * @param cosString the string operand of a text showing operator
+     * @param font the current font
+     * @return the decoded text, or null if the string can't be decoded with the font
+     */
+    static String decode(COSString cosString, PDFont font) {
+        if (font == null || cosString == null) return null;
         try {
             // FIX: Read character codes sequentially using an InputStream
             InputStream in = new ByteArrayInputStream(cosString.getBytes());
@@ -276,21 +553,11 @@ public class PdfRedaction {
                     decodedBuilder.append(unicode);
                 }
             }
+            return decodedBuilder.toString();
 
-            String decoded = decodedBuilder.toString();
-
-            if (!decoded.isEmpty()) {
-                TokenRef ref = new TokenRef();
-                ref.token = cosString;
-                ref.font = font;
-                ref.globalStart = blockText.length();
-                blockText.append(decoded);
-                ref.globalEnd = blockText.length();
-                ref.chars = decoded.toCharArray();
-                activeTokens.add(ref);
-            }
         } catch (Exception e) {
             // Ignore decoding failures for unsupported subsets
+            return null;
         }
     }
 
@@ -306,42 +573,41 @@ public class PdfRedaction {
      *                  words to scrub.
      * @param wordsToScrub A list of strings representing the words to be scrubbed from the text
      *                     sequence. Matching is performed in a case-insensitive manner, and tokens
-     *                     containing matched words are updated to reflect the redaction.
+     *                     containing matched words are updated to reflect the redaction. Can be null.
+     * @param dictionary A compiled term list, its terms are scrubbed as well. Can be null.
      */
     private void processTextSequence(
             List<TokenRef> activeTokens,
             StringBuilder blockText,
-            List<String> wordsToScrub
+            List<String> wordsToScrub,
+            TermDictionary dictionary
     ) {
         // null check
-        if (activeTokens == null || blockText == null || wordsToScrub == null) return;
+        if (activeTokens == null || blockText == null || (wordsToScrub == null && dictionary == null)) return;
         if (activeTokens.isEmpty() || blockText.isEmpty()) return;
 
-        String text = blockText.toString().toLowerCase();
+        // match on the folded text, mapped back to the characters of the block
+        TextIndex textIndex = TextIndex.of(blockText);
+        String text = textIndex.getText();
 
-        for (String word : wordsToScrub) {
-            String searchWord = word.toLowerCase();
-            if (searchWord.isEmpty()) continue;
+        if (wordsToScrub != null) {
+            for (String word : wordsToScrub) {
+                if (word == null) continue;
+                String searchWord = TextIndex.fold(word);
+                if (searchWord.isEmpty()) continue;
 
-            int index = text.indexOf(searchWord);
-            while (index >= 0) {
-                int startMatch = index;
-                int endMatch = index + searchWord.length();
-
-                // Find which stream tokens contain the matched characters and flag them for removal
-                for (TokenRef ref : activeTokens) {
-                    if (ref.globalEnd > startMatch && ref.globalStart < endMatch) {
-                        int localStart = Math.max(0, startMatch - ref.globalStart);
-                        int localEnd = Math.min(ref.chars.length, endMatch - ref.globalStart);
-                        for (int k = localStart; k < localEnd; k++) {
-                            ref.chars[k] = '\uFFFF'; // Placeholder for deleted character
-                        }
-                    }
+                int index = text.indexOf(searchWord);
+                while (index >= 0) {
+                    markDeleted(activeTokens, textIndex.sourceStart(index), textIndex.sourceEnd(index + searchWord.length()));
+                    index = text.indexOf(searchWord, index + 1);
                 }
-                index = text.indexOf(searchWord, index + 1);
             }
         }
 
+        if (dictionary != null) {
+            dictionary.find(text, (start, end) -> markDeleted(activeTokens, textIndex.sourceStart(start), textIndex.sourceEnd(end)));
+        }
+
         // Rebuild and re-encode the surviving characters back into the stream tokens
         for (TokenRef ref : activeTokens) {
             StringBuilder newText = new StringBuilder();
@@ -368,6 +634,25 @@ public class PdfRedaction {
         }
     }
 
+    /**
+     * Find which stream tokens contain the matched characters and flag them for removal.
+     *
+     * @param activeTokens the tokens of the text sequence
+     * @param startMatch the index of the first matched character in the sequence
+     * @param endMatch the index after the last matched character
+     */
+    private static void markDeleted(List<TokenRef> activeTokens, int startMatch, int endMatch) {
+        for (TokenRef ref : activeTokens) {
+            if (ref.globalEnd > startMatch && ref.globalStart < endMatch) {
+                int localStart = Math.max(0, startMatch - ref.globalStart);
+                int localEnd = Math.min(ref.chars.length, endMatch - ref.globalStart);
+                for (int k = localStart; k < localEnd; k++) {
+                    ref.chars[k] = '\uFFFF'; // Placeholder for deleted character
+                }
+            }
+        }
+    }
+
     /**
      * Draws filled black rectangles on the specified PDF page within the provided rectangular areas.
      * Each rectangle is drawn using the coordinates, width, and height specified in the {@link Rectangle2D} objects.
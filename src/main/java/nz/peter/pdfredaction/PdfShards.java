@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.multipdf.PageExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Splits a document into page-range shards and joins redacted shards back together, so that one very large
+ * document can be redacted across several machines:
+ * <pre>
+ * // on each node
+ * redaction.redact(document, pageFrom, pageTo, words, areas, false, options);
+ * PdfShards.extractPages(document, pageFrom, pageTo).save(shardFile);
+ *
+ * // on the coordinator, shards in page order
+ * PdfShards.merge(shards).save(outputFile);
+ * </pre>
+ */
+public class PdfShards {
+
+    private PdfShards() {
+    }
+
+    /**
+     * Create a self-contained document holding a range of pages of a document.  The pages keep sharing any
+     * resources (fonts, images) they shared in the source document.  The shard has no metadata.
+     *
+     * @param document the source document, must stay open until the shard has been saved
+     * @param pageFrom the first page (1-based, inclusive)
+     * @param pageTo the last page (1-based, inclusive)
+     * @return a new document with just those pages
+     * @throws IOException if the pages can't be extracted
+     */
+    public static PDDocument extractPages(PDDocument document, int pageFrom, int pageTo) throws IOException {
+        if (document == null) return null;
+        PageExtractor extractor = new PageExtractor(document, Math.max(1, pageFrom), Math.min(document.getNumberOfPages(), pageTo));
+        PDDocument shard = extractor.extract();
+        PdfRedaction.clearMetadata(shard);
+        return shard;
+    }
+
+    /**
+     * Join shards back into one document, in the order given.  Resources shared between pages of the same shard
+     * stay shared in the result.  The merged document has no metadata.
+     *
+     * @param shards the redacted shards in page order, these must stay open until the merged document has been saved
+     * @return a new document with all the pages of all the shards
+     * @throws IOException if a shard can't be appended
+     */
+    public static PDDocument merge(List<PDDocument> shards) throws IOException {
+        PDDocument merged = new PDDocument();
+        if (shards == null) return merged;
+        try {
+            PDFMergerUtility merger = new PDFMergerUtility();
+            for (PDDocument shard : shards) {
+                if (shard != null) {
+                    merger.appendDocument(merged, shard);
+                }
+            }
+            PdfRedaction.clearMetadata(merged);
+            return merged;
+        } catch (IOException ex) {
+            merged.close();
+            throw ex;
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Fills rectangles of an image black, and checks that they are, directly on the arrays behind its raster:
+ * whole scanlines at a time with {@link Arrays#fill} and {@link Arrays#mismatch} (which the JIT turns into
+ * vector instructions), instead of a pixel at a time.  Packed 1-bit rows (scans) are filled and checked a byte
+ * at a time, with masks for the partial bytes at either end.
+ * <p>
+ * Handles 8-bit grey and interleaved byte images, packed int (RGB, ARGB) images and 1-bit packed images, which
+ * is what PDFBox decodes images to; anything else falls back to Java2D.
+ */
+final class RasterMask {
+
+    private RasterMask() {
+    }
+
+    /**
+     * The pixels covered by a rectangle in raster space: those whose centre lies inside it, the same pixels
+     * Java2D fills.
+     *
+     * @param area the rectangle, in pixel coordinates
+     * @return the pixel rectangle, possibly empty
+     */
+    static Rectangle pixelBounds(Rectangle2D area) {
+        int x0 = (int) Math.ceil(area.getMinX() - 0.5);
+        int y0 = (int) Math.ceil(area.getMinY() - 0.5);
+        int x1 = (int) Math.ceil(area.getMaxX() - 0.5);
+        int y1 = (int) Math.ceil(area.getMaxY() - 0.5);
+        return new Rectangle(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+    }
+
+    /**
+     * Fill a rectangle of an image black.
+     *
+     * @param image the image
+     * @param area the pixels to fill, clipped to the image
+     */
+    static void fill(BufferedImage image, Rectangle area) {
+        Rectangle clip = area.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (clip.isEmpty()) return;
+        Layout layout = Layout.of(image);
+        if (layout == null) {
+            // not one of ours, let Java2D do it
+            Graphics2D g2d = image.createGraphics();
+            g2d.setColor(Color.BLACK);
+            g2d.fill(clip);
+            g2d.dispose();
+            return;
+        }
+        for (int y = clip.y; y < clip.y + clip.height; y++) {
+            layout.fillRow(y, clip.x, clip.x + clip.width);
+        }
+    }
+
+    /**
+     * Check a rectangle of an image is black.
+     *
+     * @param image the image
+     * @param area the pixels to check, clipped to the image
+     * @return true if every pixel in the area is black
+     */
+    static boolean isFilled(BufferedImage image, Rectangle area) {
+        Rectangle clip = area.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (clip.isEmpty()) return true;
+        Layout layout = Layout.of(image);
+        for (int y = clip.y; y < clip.y + clip.height; y++) {
+            if (layout != null) {
+                if (!layout.isRowFilled(y, clip.x, clip.x + clip.width)) return false;
+            } else {
+                for (int x = clip.x; x < clip.x + clip.width; x++) {
+                    if ((image.getRGB(x, y) & 0x00FFFFFF) != 0) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * where the pixels of an image live, and what black looks like in them
+     */
+    private abstract static class Layout {
+        final int offset; // of pixel 0,0 in the data array (in elements, or bits for packed images)
+        final int scanlineStride;
+
+        Layout(int offset, int scanlineStride) {
+            this.offset = offset;
+            this.scanlineStride = scanlineStride;
+        }
+
+        abstract void fillRow(int y, int x0, int x1);
+        abstract boolean isRowFilled(int y, int x0, int x1);
+
+        /**
+         * @return the layout of an image, or null if it isn't one we handle
+         */
+        static Layout of(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            SampleModel sampleModel = raster.getSampleModel();
+            DataBuffer dataBuffer = raster.getDataBuffer();
+            if (dataBuffer.getNumBanks() != 1) return null;
+            int tx = -raster.getSampleModelTranslateX();
+            int ty = -raster.getSampleModelTranslateY();
+            Object black = image.getColorModel().getDataElements(Color.BLACK.getRGB(), null);
+
+            if (sampleModel instanceof MultiPixelPackedSampleModel packed
+                    && packed.getPixelBitStride() == 1 && dataBuffer instanceof DataBufferByte bytes
+                    && black instanceof byte[] index) {
+                int stride = packed.getScanlineStride();
+                int bitOffset = (dataBuffer.getOffset() + ty * stride) * 8 + packed.getDataBitOffset() + tx;
+                return new PackedBits(bytes.getData(), bitOffset, stride, (index[0] & 1) != 0);
+            }
+            if (sampleModel instanceof SinglePixelPackedSampleModel single
+                    && dataBuffer instanceof DataBufferInt ints && black instanceof int[] value) {
+                int stride = single.getScanlineStride();
+                return new PackedInts(ints.getData(), dataBuffer.getOffset() + ty * stride + tx, stride, value[0]);
+            }
+            if (sampleModel instanceof ComponentSampleModel component
+                    && dataBuffer instanceof DataBufferByte bytes && black instanceof byte[] value
+                    && component.getPixelStride() == value.length && isInterleaved(component)) {
+                int stride = component.getScanlineStride();
+                int pixelStride = component.getPixelStride();
+                int first = Arrays.stream(component.getBandOffsets()).min().orElse(0);
+                // one band per byte, in band offset order
+                byte[] pixel = new byte[pixelStride];
+                int[] bandOffsets = component.getBandOffsets();
+                for (int b = 0; b < bandOffsets.length; b++) {
+                    pixel[bandOffsets[b] - first] = value[b];
+                }
+                return new InterleavedBytes(bytes.getData(), dataBuffer.getOffset() + ty * stride + tx * pixelStride + first, stride, pixel);
+            }
+            return null;
+        }
+
+        /**
+         * the bands of a pixel are next to each other, each in its own byte
+         */
+        private static boolean isInterleaved(ComponentSampleModel component) {
+            int[] bandOffsets = component.getBandOffsets();
+            int min = Arrays.stream(bandOffsets).min().orElse(0);
+            int max = Arrays.stream(bandOffsets).max().orElse(0);
+            return max - min + 1 == component.getPixelStride() && bandOffsets.length == component.getPixelStride();
+        }
+    }
+
+    /**
+     * 8-bit grey, BGR, ABGR: a whole row is one fill if all bytes of black are equal (grey, BGR)
+     */
+    private static final class InterleavedBytes extends Layout {
+        private final byte[] data;
+        private final byte[] pixel;
+        private final boolean uniform;
+        private byte[] row = new byte[0]; // a row of black pixels to compare with
+
+        InterleavedBytes(byte[] data, int offset, int scanlineStride, byte[] pixel) {
+            super(offset, scanlineStride);
+            this.data = data;
+            this.pixel = pixel;
+            boolean same = true;
+            for (byte b : pixel) same &= b == pixel[0];
+            this.uniform = same;
+        }
+
+        @Override
+        void fillRow(int y, int x0, int x1) {
+            int from = offset + y * scanlineStride + x0 * pixel.length;
+            int to = offset + y * scanlineStride + x1 * pixel.length;
+            if (uniform) {
+                Arrays.fill(data, from, to, pixel[0]);
+            } else {
+                for (int i = from; i < to; i += pixel.length) {
+                    System.arraycopy(pixel, 0, data, i, pixel.length);
+                }
+            }
+        }
+
+        @Override
+        boolean isRowFilled(int y, int x0, int x1) {
+            int length = (x1 - x0) * pixel.length;
+            if (row.length < length) {
+                row = new byte[length];
+                for (int i = 0; i < length; i += pixel.length) {
+                    System.arraycopy(pixel, 0, row, i, pixel.length);
+                }
+            }
+            int from = offset + y * scanlineStride + x0 * pixel.length;
+            return Arrays.mismatch(data, from, from + length, row, 0, length) < 0;
+        }
+    }
+
+    /**
+     * RGB and ARGB packed into an int per pixel
+     */
+    private static final class PackedInts extends Layout {
+        private final int[] data;
+        private final int black;
+        private int[] row = new int[0];
+
+        PackedInts(int[] data, int offset, int scanlineStride, int black) {
+            super(offset, scanlineStride);
+            this.data = data;
+            this.black = black;
+        }
+
+        @Override
+        void fillRow(int y, int x0, int x1) {
+            int from = offset + y * scanlineStride;
+            Arrays.fill(data, from + x0, from + x1, black);
+        }
+
+        @Override
+        boolean isRowFilled(int y, int x0, int x1) {
+            int length = x1 - x0;
+            if (row.length < length) {
+                row = new int[length];
+                Arrays.fill(row, black);
+            }
+            int from = offset + y * scanlineStride + x0;
+            return Arrays.mismatch(data, from, from + length, row, 0, length) < 0;
+        }
+    }
+
+    /**
+     * 1 bit per pixel, 8 pixels per byte with the leftmost pixel in the high bit
+     */
+    private static final class PackedBits extends Layout {
+        private final byte[] data;
+        private final byte fillByte; // black for 8 pixels
+        private byte[] row = new byte[0];
+
+        PackedBits(byte[] data, int bitOffset, int scanlineStride, boolean blackIsOne) {
+            super(bitOffset, scanlineStride);
+            this.data = data;
+            this.fillByte = blackIsOne ? (byte) 0xFF : 0;
+        }
+
+        @Override
+        void fillRow(int y, int x0, int x1) {
+            int startBit = offset + y * scanlineStride * 8 + x0;
+            int endBit = startBit + (x1 - x0);
+            int firstByte = startBit >> 3;
+            int lastByte = (endBit - 1) >> 3;
+            if (firstByte == lastByte) {
+                setBits(firstByte, mask(startBit & 7, ((endBit - 1) & 7) + 1));
+                return;
+            }
+            setBits(firstByte, mask(startBit & 7, 8));
+            Arrays.fill(data, firstByte + 1, lastByte, fillByte);
+            setBits(lastByte, mask(0, ((endBit - 1) & 7) + 1));
+        }
+
+        @Override
+        boolean isRowFilled(int y, int x0, int x1) {
+            int startBit = offset + y * scanlineStride * 8 + x0;
+            int endBit = startBit + (x1 - x0);
+            int firstByte = startBit >> 3;
+            int lastByte = (endBit - 1) >> 3;
+            if (firstByte == lastByte) {
+                return hasBits(firstByte, mask(startBit & 7, ((endBit - 1) & 7) + 1));
+            }
+            if (!hasBits(firstByte, mask(startBit & 7, 8)) || !hasBits(lastByte, mask(0, ((endBit - 1) & 7) + 1))) {
+                return false;
+            }
+            int length = lastByte - firstByte - 1;
+            if (row.length < length) {
+                row = new byte[length];
+                Arrays.fill(row, fillByte);
+            }
+            return Arrays.mismatch(data, firstByte + 1, lastByte, row, 0, length) < 0;
+        }
+
+        /**
+         * the bits of pixels from..to-1 of a byte, pixel 0 is the high bit
+         */
+        private static int mask(int from, int to) {
+            return (0xFF >> from) & (0xFF << (8 - to)) & 0xFF;
+        }
+
+        private void setBits(int index, int mask) {
+            data[index] = (byte) ((data[index] & ~mask) | (fillByte & mask));
+        }
+
+        private boolean hasBits(int index, int mask) {
+            return (data[index] & mask) == (fillByte & mask);
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A large set of redaction areas stored as primitive columns instead of one {@link RectangleOnPage} per area:
+ * about 20 bytes per area and no objects for the garbage collector.  The areas are sorted by page (a stable
+ * counting sort, the order within a page is kept; a sort of (page, index) keys when the page numbers are too
+ * large for counting) and indexed, so the areas of a page are found in O(log pages) rather than by scanning
+ * them all.
+ * <p>
+ * Coordinates are in PDF user space, the bottom-left corner of each area and its size, the same as
+ * {@link RectangleOnPage}.
+ */
+public class RedactionAreas {
+
+    // the number of floats per area in the interleaved buffer form: page, x, y, width, height
+    public static final int FLOATS_PER_AREA = 5;
+
+    private final int[] pages; // 1-based, ascending
+    private final float[] x;
+    private final float[] y;
+    private final float[] width;
+    private final float[] height;
+    private final int size;
+
+    // the distinct page numbers, and where the areas of each start in the columns
+    private final int[] pageNumbers;
+    private final int[] pageOffsets; // one longer than pageNumbers
+
+    /**
+     * Create from columns of equal length.  Columns already sorted by page are used as they are, not copied,
+     * so don't change them afterwards.
+     *
+     * @param pages the 1-based page number of each area
+     * @param x the x coordinate of the bottom-left corner of each area
+     * @param y the y coordinate of the bottom-left corner of each area
+     * @param width the width of each area
+     * @param height the height of each area
+     * @throws IllegalArgumentException if the columns differ in length, or a page number is less than 1
+     */
+    public RedactionAreas(int[] pages, float[] x, float[] y, float[] width, float[] height) {
+        this(pages, x, y, width, height, pages != null ? pages.length : 0);
+    }
+
+    /**
+     * Create from the first size entries of columns.
+     */
+    RedactionAreas(int[] pages, float[] x, float[] y, float[] width, float[] height, int size) {
+        if (pages == null || x == null || y == null || width == null || height == null) {
+            throw new IllegalArgumentException("columns can't be null");
+        }
+        if (x.length < size || y.length < size || width.length < size || height.length < size || pages.length < size) {
+            throw new IllegalArgumentException("columns must all have " + size + " entries");
+        }
+        boolean sorted = true;
+        int maxPage = 0;
+        for (int i = 0; i < size; i++) {
+            if (pages[i] < 1) throw new IllegalArgumentException("invalid page number " + pages[i] + " at " + i);
+            if (i > 0 && pages[i] < pages[i - 1]) sorted = false;
+            maxPage = Math.max(maxPage, pages[i]);
+        }
+        this.size = size;
+
+        if (sorted) {
+            this.pages = pages;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        } else {
+            this.pages = new int[size];
+            this.x = new float[size];
+            this.y = new float[size];
+            this.width = new float[size];
+            this.height = new float[size];
+            if (maxPage <= 2L * size + 1024) {
+                // counting sort: count the areas of each page, turn the counts into offsets, then place them
+                int[] offsets = new int[maxPage + 2];
+                for (int i = 0; i < size; i++) offsets[pages[i] + 1]++;
+                for (int p = 1; p < offsets.length; p++) offsets[p] += offsets[p - 1];
+                for (int i = 0; i < size; i++) {
+                    place(pages, x, y, width, height, i, offsets[pages[i]]++);
+                }
+            } else {
+                // page numbers far beyond the number of areas: sort (page, index) keys instead, as stable
+                long[] keys = new long[size];
+                for (int i = 0; i < size; i++) keys[i] = (long) pages[i] << 32 | i;
+                Arrays.sort(keys);
+                for (int to = 0; to < size; to++) {
+                    place(pages, x, y, width, height, (int) keys[to], to);
+                }
+            }
+        }
+
+        // the page index
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || this.pages[i] != this.pages[i - 1]) distinct++;
+        }
+        this.pageNumbers = new int[distinct];
+        this.pageOffsets = new int[distinct + 1];
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || this.pages[i] != this.pages[i - 1]) {
+                pageNumbers[p] = this.pages[i];
+                pageOffsets[p++] = i;
+            }
+        }
+        pageOffsets[distinct] = size;
+    }
+
+    private void place(int[] pages, float[] x, float[] y, float[] width, float[] height, int from, int to) {
+        this.pages[to] = pages[from];
+        this.x[to] = x[from];
+        this.y[to] = y[from];
+        this.width[to] = width[from];
+        this.height[to] = height[from];
+    }
+
+    /**
+     * Create from an interleaved buffer of {@link #FLOATS_PER_AREA} floats per area: page, x, y, width, height.
+     * The remaining floats of the buffer are read, its position isn't changed.
+     *
+     * @param buffer the areas
+     * @return the areas, sorted by page
+     * @throws IllegalArgumentException if the buffer doesn't hold a whole number of areas
+     */
+    public static RedactionAreas fromBuffer(FloatBuffer buffer) {
+        if (buffer == null) return empty();
+        FloatBuffer in = buffer.duplicate();
+        if (in.remaining() % FLOATS_PER_AREA != 0) {
+            throw new IllegalArgumentException("buffer size is not a multiple of " + FLOATS_PER_AREA);
+        }
+        int count = in.remaining() / FLOATS_PER_AREA;
+        int[] pages = new int[count];
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] width = new float[count];
+        float[] height = new float[count];
+        for (int i = 0; i < count; i++) {
+            pages[i] = (int) in.get();
+            x[i] = in.get();
+            y[i] = in.get();
+            width[i] = in.get();
+            height[i] = in.get();
+        }
+        return new RedactionAreas(pages, x, y, width, height);
+    }
+
+    /**
+     * Create from a list of areas, those with an invalid page number (less than 1) are left out as they can never
+     * be redacted.
+     *
+     * @param areas the areas, can be null
+     * @return the areas, sorted by page
+     */
+    public static RedactionAreas fromList(List<RectangleOnPage> areas) {
+        Collector collector = new Collector(areas != null ? areas.size() : 0);
+        if (areas != null) {
+            for (RectangleOnPage area : areas) {
+                if (area != null && area.getPage() >= 1) {
+                    collector.add(area.getPage(), area.getX(), area.getY(), area.getWidth(), area.getHeight());
+                }
+            }
+        }
+        return collector.toAreas();
+    }
+
+    /**
+     * @return a set without any areas
+     */
+    public static RedactionAreas empty() {
+        return new RedactionAreas(new int[0], new float[0], new float[0], new float[0], new float[0]);
+    }
+
+    /**
+     * @return the number of areas
+     */
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    // the columns of area i, 0 <= i < size(), in page order
+    public int getPage(int i) { return pages[i]; }
+    public float getX(int i) { return x[i]; }
+    public float getY(int i) { return y[i]; }
+    public float getWidth(int i) { return width[i]; }
+    public float getHeight(int i) { return height[i]; }
+
+    /**
+     * @param page a 1-based page number
+     * @return the index of the first area of the page, equal to {@link #pageEnd(int)} if the page has none
+     */
+    public int pageStart(int page) {
+        int p = Arrays.binarySearch(pageNumbers, page);
+        return p >= 0 ? pageOffsets[p] : 0;
+    }
+
+    /**
+     * @param page a 1-based page number
+     * @return the index after the last area of the page
+     */
+    public int pageEnd(int page) {
+        int p = Arrays.binarySearch(pageNumbers, page);
+        return p >= 0 ? pageOffsets[p + 1] : 0;
+    }
+
+    /**
+     * @return the pages that have areas, ascending
+     */
+    public int[] getPageNumbers() {
+        return pageNumbers.clone();
+    }
+
+    /**
+     * @return the areas, interleaved as {@link #FLOATS_PER_AREA} floats per area (page, x, y, width, height),
+     *         ready to read
+     */
+    public FloatBuffer toBuffer() {
+        FloatBuffer buffer = FloatBuffer.allocate(size * FLOATS_PER_AREA);
+        for (int i = 0; i < size; i++) {
+            buffer.put(pages[i]).put(x[i]).put(y[i]).put(width[i]).put(height[i]);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return the areas as objects, for smaller sets
+     */
+    public List<RectangleOnPage> toList() {
+        List<RectangleOnPage> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new RectangleOnPage(pages[i], x[i], y[i], width[i], height[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Collects areas into growing columns, for areas found page by page.
+     */
+    static class Collector {
+        private int[] pages;
+        private float[] x;
+        private float[] y;
+        private float[] width;
+        private float[] height;
+        private int size = 0;
+
+        Collector(int capacity) {
+            capacity = Math.max(16, capacity);
+            pages = new int[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            width = new float[capacity];
+            height = new float[capacity];
+        }
+
+        void add(int page, float areaX, float areaY, float areaWidth, float areaHeight) {
+            if (size == pages.length) {
+                int capacity = size * 2;
+                pages = Arrays.copyOf(pages, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                width = Arrays.copyOf(width, capacity);
+                height = Arrays.copyOf(height, capacity);
+            }
+            pages[size] = page;
+            x[size] = areaX;
+            y[size] = areaY;
+            width[size] = areaWidth;
+            height[size] = areaHeight;
+            size++;
+        }
+
+        RedactionAreas toAreas() {
+            return new RedactionAreas(pages, x, y, width, height, size);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+/**
+ * Resource limits for the redaction of a single document.  A limit of zero (or less) means unlimited.
+ * Limits are checked cooperatively at page, content-stream token and image boundaries, so a
+ * pathological document is abandoned soon after it crosses a limit rather than at the end.
+ */
+public class RedactionBudget {
+    private final long maxWallTimeMillis; // maximum elapsed time for one document
+    private final long maxDecodedPixels; // total number of image pixels we're prepared to decode
+    private final long maxContentStreamBytes; // total size of the (encoded) page content streams
+    private final int maxPages; // documents with more pages than this are rejected outright
+
+    /**
+     * @param maxWallTimeMillis     maximum elapsed wall time in milliseconds, 0 for unlimited.
+     * @param maxDecodedPixels      maximum number of image pixels decoded across the document, 0 for unlimited.
+     * @param maxContentStreamBytes maximum number of page content-stream bytes processed, 0 for unlimited.
+     * @param maxPages              maximum number of pages in the document, 0 for unlimited.
+     */
+    public RedactionBudget(long maxWallTimeMillis, long maxDecodedPixels, long maxContentStreamBytes, int maxPages) {
+        this.maxWallTimeMillis = maxWallTimeMillis;
+        this.maxDecodedPixels = maxDecodedPixels;
+        this.maxContentStreamBytes = maxContentStreamBytes;
+        this.maxPages = maxPages;
+    }
+
+    public long getMaxWallTimeMillis() { return maxWallTimeMillis; }
+    public long getMaxDecodedPixels() { return maxDecodedPixels; }
+    public long getMaxContentStreamBytes() { return maxContentStreamBytes; }
+    public int getMaxPages() { return maxPages; }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Redacts one document several ways, for different recipients, from a single parse.  Each profile has its own
+ * words, areas and options and its own output.  The text of the document is extracted once, into a
+ * {@link DocumentIndex} all profiles look their words up in, and each profile only changes the pages it has
+ * something to redact on: before a profile runs, those pages get their own copy of their resources (and the
+ * forms in them) and content array, so nothing shared is changed; after its output is saved they're put back
+ * the way they were for the next profile.  Everything else, fonts, images and the untouched pages, is shared by
+ * all outputs and never copied.
+ * <p>
+ * Profiles are redacted one after the other on the same document, so a document can only be in one fan-out at
+ * a time.  The document level clean-up of a profile's sanitiser (see {@link RedactionOptions#setSanitiser})
+ * isn't undone, it carries over to the profiles after it; give all profiles the same sanitiser.
+ */
+public class RedactionFanOut {
+
+    /**
+     * the redaction of one recipient
+     */
+    public static class Profile {
+        private final String name;
+        private final List<String> words;
+        private final RedactionAreas areas;
+        private final RedactionOptions options;
+        private final OutputStream output;
+
+        /**
+         * @param name names the profile
+         * @param words the words to redact, can be null
+         * @param areas the areas to redact, can be null
+         * @param options the settings of this profile (dictionary, burn-in, budgets), can be null
+         * @param output receives the redacted document, only written if the redaction is complete
+         */
+        public Profile(String name, List<String> words, RedactionAreas areas, RedactionOptions options, OutputStream output) {
+            this.name = name;
+            this.words = words;
+            this.areas = areas;
+            this.options = options != null ? options : new RedactionOptions();
+            this.output = output;
+        }
+
+        public String getName() { return name; }
+        public List<String> getWords() { return words; }
+        public RedactionAreas getAreas() { return areas; }
+        public RedactionOptions getOptions() { return options; }
+        public OutputStream getOutput() { return output; }
+    }
+
+    private final PdfRedaction redaction;
+    private DocumentIndex documentIndex = null; // built for each fan-out
+
+    // constructor
+    public RedactionFanOut(PdfRedaction redaction) {
+        this.redaction = redaction;
+    }
+
+    /**
+     * @param documentIndex a stored index of the document to use instead of extracting its text (see
+     *                      {@link DocumentIndex#forDocument}), null (the default) to extract it once per fan-out
+     */
+    public void setDocumentIndex(DocumentIndex documentIndex) { this.documentIndex = documentIndex; }
+
+    /**
+     * Redact a document once per profile and write each result to the profile's output.  The document is left as
+     * it was, apart from its sanitising.
+     *
+     * @param document the document, parsed once
+     * @param profiles the redactions to make
+     * @return the result of each profile, in the same order; a profile whose redaction isn't complete (see
+     *         {@link RedactionResult#isComplete()}) has nothing written to its output
+     * @throws IOException if the document can't be read or an output can't be written
+     */
+    public List<RedactionResult> redact(PDDocument document, List<Profile> profiles) throws IOException {
+        List<RedactionResult> results = new ArrayList<>();
+        if (document == null || profiles == null) return results;
+
+        // one text extraction for all profiles, only if any of them looks for words
+        DocumentIndex index = documentIndex;
+        if (index == null || !index.matches(document)) {
+            index = null;
+            for (Profile profile : profiles) {
+                if (findsWords(profile)) {
+                    index = DocumentIndex.build(document, ""); // never stored, no hash needed
+                    break;
+                }
+            }
+        }
+
+        for (Profile profile : profiles) {
+            RedactionOptions options = profile.getOptions();
+            DocumentIndex previousIndex = options.getDocumentIndex();
+            if (index != null) {
+                options.setDocumentIndex(index);
+            }
+            Map<Integer, COSDictionary> saved = new TreeMap<>();
+            try {
+                Map<COSStream, COSStream> copies = new IdentityHashMap<>();
+                for (int pageNum : pagesToChange(document, profile, index)) {
+                    saved.put(pageNum, isolate(document, document.getPage(pageNum - 1), copies));
+                }
+                RedactionResult result = redaction.redactAreas(document, profile.getWords(), profile.getAreas(), false, options);
+                if (result.isComplete()) {
+                    document.save(profile.getOutput());
+                }
+                results.add(result);
+            } finally {
+                options.setDocumentIndex(previousIndex);
+                for (Map.Entry<Integer, COSDictionary> entry : saved.entrySet()) {
+                    COSDictionary page = document.getPage(entry.getKey() - 1).getCOSObject();
+                    page.clear();
+                    page.addAll(entry.getValue());
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean findsWords(Profile profile) {
+        return (profile.getWords() != null && !profile.getWords().isEmpty()) || profile.getOptions().getDictionary() != null;
+    }
+
+    /**
+     * @return the 1-based numbers of the pages a profile changes: those with areas, hits or to be burnt in
+     */
+    private static TreeSet<Integer> pagesToChange(PDDocument document, Profile profile, DocumentIndex index) {
+        int numPages = document.getNumberOfPages();
+        TreeSet<Integer> pages = new TreeSet<>(profile.getOptions().getBurnInPages());
+        if (profile.getAreas() != null) {
+            for (int pageNum : profile.getAreas().getPageNumbers()) pages.add(pageNum);
+        }
+        if (index != null && findsWords(profile)) {
+            for (int pageNum = 1; pageNum <= numPages; pageNum++) {
+                if (!index.find(pageNum, profile.getWords(), profile.getOptions().getDictionary()).isEmpty()) {
+                    pages.add(pageNum);
+                }
+            }
+        }
+        pages.removeIf(pageNum -> pageNum < 1 || pageNum > numPages);
+        return pages;
+    }
+
+    /**
+     * Give a page its own copy of everything a redaction changes in place: its resources (with the forms in them,
+     * whose images can be replaced) and its array of content streams.  The redaction itself only puts new objects
+     * in these, so the shared originals are left untouched.
+     *
+     * @return the page's dictionary as it was, to restore it with
+     */
+    private static COSDictionary isolate(PDDocument document, PDPage page, Map<COSStream, COSStream> copies) throws IOException {
+        COSDictionary dictionary = page.getCOSObject();
+        COSDictionary saved = new COSDictionary(dictionary);
+
+        PDResources resources = page.getResources(); // possibly inherited
+        if (resources != null) {
+            dictionary.setItem(COSName.RESOURCES, copyResources(document, resources.getCOSObject(), copies));
+        }
+        if (dictionary.getDictionaryObject(COSName.CONTENTS) instanceof COSArray contents) {
+            COSArray copy = new COSArray();
+            for (int i = 0; i < contents.size(); i++) {
+                copy.add(contents.get(i));
+            }
+            dictionary.setItem(COSName.CONTENTS, copy);
+        }
+        return saved;
+    }
+
+    /**
+     * a resource dictionary with copies of its sub-dictionaries and forms, everything else is shared
+     */
+    private static COSDictionary copyResources(PDDocument document, COSDictionary resources, Map<COSStream, COSStream> copies) throws IOException {
+        COSDictionary copy = new COSDictionary();
+        for (Map.Entry<COSName, COSBase> entry : resources.entrySet()) {
+            COSBase value = resolve(entry.getValue());
+            if (value instanceof COSDictionary kind && !(value instanceof COSStream)) {
+                COSDictionary kindCopy = new COSDictionary();
+                for (Map.Entry<COSName, COSBase> resource : kind.entrySet()) {
+                    COSBase object = resolve(resource.getValue());
+                    if (COSName.XOBJECT.equals(entry.getKey()) && object instanceof COSStream stream
+                            && COSName.FORM.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                        kindCopy.setItem(resource.getKey(), copyForm(document, stream, copies));
+                    } else {
+                        kindCopy.setItem(resource.getKey(), resource.getValue());
+                    }
+                }
+                copy.setItem(entry.getKey(), kindCopy);
+            } else {
+                copy.setItem(entry.getKey(), entry.getValue());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * a form with a copy of its resources, its content copied as it is, still encoded
+     */
+    private static COSStream copyForm(PDDocument document, COSStream form, Map<COSStream, COSStream> copies) throws IOException {
+        COSStream copy = copies.get(form);
+        if (copy != null) return copy;
+        copy = document.getDocument().createCOSStream();
+        copies.put(form, copy); // before the resources, forms can draw themselves
+        for (Map.Entry<COSName, COSBase> entry : form.entrySet()) {
+            if (COSName.LENGTH.equals(entry.getKey())) continue;
+            if (COSName.RESOURCES.equals(entry.getKey()) && resolve(entry.getValue()) instanceof COSDictionary resources) {
+                copy.setItem(COSName.RESOURCES, copyResources(document, resources, copies));
+            } else {
+                copy.setItem(entry.getKey(), entry.getValue());
+            }
+        }
+        try (InputStream in = form.createRawInputStream(); OutputStream out = copy.createRawOutputStream()) {
+            in.transferTo(out);
+        }
+        return copy;
+    }
+
+    private static COSBase resolve(COSBase base) {
+        return base instanceof COSObject object ? object.getObject() : base;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Optional per-document settings for {@link PdfRedaction#redact(org.apache.pdfbox.pdmodel.PDDocument, java.util.List, java.util.List, boolean, RedactionOptions)}.
+ * All settings default to the behaviour of the plain redact call.
+ */
+public class RedactionOptions {
+    private RedactionBudget budget = null; // no limits
+    private CancellationToken cancellationToken = null; // can't be cancelled
+    private MemoryBudget memoryBudget = null; // pages are admitted without looking at memory
+    private BoundedResourceCache resourceCache = null; // the document's own (unbounded) cache
+    private TermDictionary dictionary = null; // only the list of words
+    private DocumentSanitiser sanitiser = DocumentSanitiser.metadata(); // run once on a modified document
+    private ParallelDeflater deflater = null; // PDFBox's single-threaded compression
+    private long imageMemoryLimit = 256L * 1024 * 1024; // larger images are masked in bands
+    private DocumentIndex documentIndex = null; // words are located by extracting the text of every page
+
+    // pages replaced by an image of themselves, see setBurnInPages()
+    private Set<Integer> burnInPages = Collections.emptySet();
+    private float burnInDpi = 150;
+    private boolean burnInMono = false;
+    private long burnInMemoryLimit = 64L * 1024 * 1024;
+    private int burnInThreads = Runtime.getRuntime().availableProcessors();
+
+    public RedactionBudget getBudget() { return budget; }
+    public void setBudget(RedactionBudget budget) { this.budget = budget; }
+
+    public CancellationToken getCancellationToken() { return cancellationToken; }
+    public void setCancellationToken(CancellationToken cancellationToken) { this.cancellationToken = cancellationToken; }
+
+    public MemoryBudget getMemoryBudget() { return memoryBudget; }
+    /**
+     * @param memoryBudget heap shared with other redactions, each page waits until its estimated peak fits
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) { this.memoryBudget = memoryBudget; }
+
+    public BoundedResourceCache getResourceCache() { return resourceCache; }
+    /**
+     * @param resourceCache replaces the resource cache of the document, use one per document
+     */
+    public void setResourceCache(BoundedResourceCache resourceCache) { this.resourceCache = resourceCache; }
+
+    public TermDictionary getDictionary() { return dictionary; }
+    /**
+     * @param dictionary a compiled term list, its terms are located and scrubbed next to the list of words
+     */
+    public void setDictionary(TermDictionary dictionary) { this.dictionary = dictionary; }
+
+    public DocumentSanitiser getSanitiser() { return sanitiser; }
+    /**
+     * @param sanitiser removes data outside the page content from a redacted document, once, after all pages.
+     *                  Defaults to the document information and XMP metadata, null for none.
+     */
+    public void setSanitiser(DocumentSanitiser sanitiser) { this.sanitiser = sanitiser; }
+
+    public ParallelDeflater getDeflater() { return deflater; }
+    /**
+     * @param deflater compresses redacted images, burnt in pages and rewritten content streams on several cores,
+     *                 can be shared by all redactions.  Null (the default) for PDFBox's own compression.
+     */
+    public void setDeflater(ParallelDeflater deflater) { this.deflater = deflater; }
+
+    public long getImageMemoryLimit() { return imageMemoryLimit; }
+    /**
+     * @param imageMemoryLimit the bytes an image may take to decode, mask and re-encode whole (see
+     *                         {@link MemoryEstimator}).  Larger images are masked a band of rows at a time through
+     *                         a scratch file, in about this much memory.  0 to always decode images whole.
+     */
+    public void setImageMemoryLimit(long imageMemoryLimit) { this.imageMemoryLimit = imageMemoryLimit; }
+
+    public DocumentIndex getDocumentIndex() { return documentIndex; }
+    /**
+     * @param documentIndex the index of the document being redacted (see {@link DocumentIndex#forDocument}), words
+     *                      and terms are looked up in it and pages without hits aren't parsed; ignored for every
+     *                      page whose crop box, rotation or content (and forms) isn't what was indexed (see
+     *                      {@link DocumentIndex#matches(int, org.apache.pdfbox.pdmodel.PDPage)}), those pages have their text extracted
+     */
+    public void setDocumentIndex(DocumentIndex documentIndex) { this.documentIndex = documentIndex; }
+
+    public Set<Integer> getBurnInPages() { return burnInPages; }
+    /**
+     * Pages whose text can't be scrubbed reliably (broken ToUnicode maps, Type3 fonts) can instead be
+     * "burnt in": the redaction boxes are drawn, then the whole page is replaced by an image of itself.
+     * Burnt in pages lose their text layer and annotations.
+     *
+     * @param burnInPages the 1-based numbers of the pages to burn in
+     */
+    public void setBurnInPages(Set<Integer> burnInPages) {
+        this.burnInPages = burnInPages != null ? new HashSet<>(burnInPages) : Collections.emptySet();
+    }
+
+    public float getBurnInDpi() { return burnInDpi; }
+    public void setBurnInDpi(float burnInDpi) { this.burnInDpi = burnInDpi; }
+
+    public boolean isBurnInMono() { return burnInMono; }
+    /**
+     * @param burnInMono if true, burnt in pages are rendered in black and white and encoded as 1-bit CCITT G4
+     */
+    public void setBurnInMono(boolean burnInMono) { this.burnInMono = burnInMono; }
+
+    public long getBurnInMemoryLimit() { return burnInMemoryLimit; }
+    /**
+     * @param burnInMemoryLimit the number of bytes the page rasters of a burn-in may use, this sets the strip height
+     */
+    public void setBurnInMemoryLimit(long burnInMemoryLimit) { this.burnInMemoryLimit = burnInMemoryLimit; }
+
+    public int getBurnInThreads() { return burnInThreads; }
+    public void setBurnInThreads(int burnInThreads) { this.burnInThreads = burnInThreads; }
+}
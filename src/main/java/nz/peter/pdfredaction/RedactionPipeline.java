@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redacts a batch of PDF files in three stages, each with its own threads and joined by bounded queues, so the
+ * CPU is kept busy while files are being read and written:
+ * <ol>
+ *     <li>read: the next files are read into memory ahead of time (I/O bound)</li>
+ *     <li>redact: the documents are parsed and redacted (CPU bound)</li>
+ *     <li>write: finished documents are compressed and saved behind the redaction (I/O and CPU)</li>
+ * </ol>
+ * The queue sizes limit how many documents are held in memory between stages.  A document that isn't fully
+ * redacted (see {@link RedactionResult#isComplete()}) or fails is never written, its result says why.
+ * Outputs are written to a temporary file first and then moved into place.
+ */
+public class RedactionPipeline {
+
+    /**
+     * the outcome of one file of the batch
+     */
+    public static class DocumentResult {
+        private final Path input;
+        private final Path output;
+        private RedactionResult result = null; // null if the document couldn't be redacted
+        private Throwable error = null; // why the document wasn't written, null if it was
+        private boolean written = false;
+
+        DocumentResult(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Path getInput() { return input; }
+        public Path getOutput() { return output; }
+        public RedactionResult getResult() { return result; }
+        public Throwable getError() { return error; }
+        public boolean isWritten() { return written; }
+
+        @Override
+        public String toString() {
+            return input + ": " + (written ? "written to " + output : "not written") +
+                    (result != null ? ", " + result : "") + (error != null ? ", " + error.getMessage() : "");
+        }
+    }
+
+    // a document on its way through the stages
+    private static class Item {
+        private final int index;
+        private byte[] bytes;
+        private PDDocument document;
+
+        Item(int index) {
+            this.index = index;
+        }
+    }
+
+    private static final Item END = new Item(-1); // no more items for this stage
+
+    private final PdfRedaction redaction = new PdfRedaction();
+    private final int readThreads;
+    private final int redactThreads;
+    private final int writeThreads;
+    private final int readAhead;
+    private final int writeBehind;
+
+    /**
+     * @param readThreads the number of files read at the same time
+     * @param redactThreads the number of documents redacted at the same time, typically the number of cores
+     * @param writeThreads the number of documents saved at the same time
+     * @param readAhead the number of files read, waiting to be redacted
+     * @param writeBehind the number of redacted documents waiting to be saved
+     */
+    public RedactionPipeline(int readThreads, int redactThreads, int writeThreads, int readAhead, int writeBehind) {
+        this.readThreads = Math.max(1, readThreads);
+        this.redactThreads = Math.max(1, redactThreads);
+        this.writeThreads = Math.max(1, writeThreads);
+        this.readAhead = Math.max(1, readAhead);
+        this.writeBehind = Math.max(1, writeBehind);
+    }
+
+    /**
+     * Redact a batch of files, each is written under its own file name to the output directory.  A document that
+     * fails, even with an {@link Error} such as running out of memory, only fails itself: the error is recorded in
+     * its result and the other documents carry on.
+     *
+     * @param inputs the PDF files to redact
+     * @param outputDirectory where the redacted files are written, must exist
+     * @param words A list of words to be redacted from every document. Can be null or empty.
+     * @param options optional settings, shared by all documents (don't set a resource cache, that's one per document)
+     * @return the result of each file, in the order of the inputs
+     * @throws IllegalArgumentException if two inputs have the same file name, their outputs would overwrite each other
+     * @throws InterruptedException if interrupted while waiting for the batch, the stages are stopped
+     */
+    public List<DocumentResult> process(
+            List<Path> inputs,
+            Path outputDirectory,
+            List<String> words,
+            RedactionOptions options
+    ) throws InterruptedException {
+        if (inputs == null || inputs.isEmpty() || outputDirectory == null) return new ArrayList<>();
+
+        DocumentResult[] results = new DocumentResult[inputs.size()];
+        Set<Path> names = new HashSet<>();
+        for (int i = 0; i < results.length; i++) {
+            Path input = inputs.get(i);
+            if (!names.add(input.getFileName())) {
+                throw new IllegalArgumentException("more than one input named " + input.getFileName());
+            }
+            results[i] = new DocumentResult(input, outputDirectory.resolve(input.getFileName()));
+        }
+
+        BlockingQueue<Item> readQueue = new ArrayBlockingQueue<>(readAhead);
+        BlockingQueue<Item> writeQueue = new ArrayBlockingQueue<>(writeBehind);
+        AtomicInteger nextInput = new AtomicInteger(0);
+        AtomicInteger activeReaders = new AtomicInteger(readThreads);
+        AtomicInteger activeRedactors = new AtomicInteger(redactThreads);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < readThreads; t++) {
+            threads.add(new Thread(() -> read(results, nextInput, readQueue, activeReaders), "redaction-read-" + t));
+        }
+        for (int t = 0; t < redactThreads; t++) {
+            threads.add(new Thread(() -> redact(results, words, options, readQueue, writeQueue, activeRedactors), "redaction-redact-" + t));
+        }
+        for (int t = 0; t < writeThreads; t++) {
+            threads.add(new Thread(() -> write(results, writeQueue), "redaction-write-" + t));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw ex;
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * read stage: read whole files into memory, the last reader to finish ends the redact stage
+     */
+    private void read(DocumentResult[] results, AtomicInteger nextInput, BlockingQueue<Item> readQueue, AtomicInteger activeReaders) {
+        try {
+            int index;
+            while ((index = nextInput.getAndIncrement()) < results.length) {
+                Item item = new Item(index);
+                try {
+                    item.bytes = Files.readAllBytes(results[index].input);
+                } catch (Throwable ex) {
+                    results[index].error = ex;
+                    continue;
+                }
+                readQueue.put(item);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // however this reader stopped, the redactors mustn't wait for it
+            if (activeReaders.decrementAndGet() == 0) {
+                end(readQueue, redactThreads);
+            }
+        }
+    }
+
+    /**
+     * redact stage: parse and redact, the last redactor to finish ends the write stage
+     */
+    private void redact(
+            DocumentResult[] results,
+            List<String> words,
+            RedactionOptions options,
+            BlockingQueue<Item> readQueue,
+            BlockingQueue<Item> writeQueue,
+            AtomicInteger activeRedactors
+    ) {
+        try {
+            Item item;
+            while ((item = readQueue.take()) != END) {
+                DocumentResult documentResult = results[item.index];
+                try {
+                    item.document = Loader.loadPDF(item.bytes);
+                    item.bytes = null; // the document has what it needs
+                    documentResult.result = redaction.redact(item.document, words, null, false, options);
+                } catch (Throwable ex) {
+                    item.bytes = null;
+                    documentResult.error = ex;
+                }
+                if (documentResult.error == null && !documentResult.result.isComplete()) {
+                    documentResult.error = new IOException("redaction incomplete: " + documentResult.result);
+                }
+                if (documentResult.error != null) {
+                    close(item.document);
+                    continue;
+                }
+                writeQueue.put(item);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (activeRedactors.decrementAndGet() == 0) {
+                end(writeQueue, writeThreads);
+            }
+        }
+    }
+
+    /**
+     * write stage: save to a temporary file next to the output, then move it into place
+     */
+    private void write(DocumentResult[] results, BlockingQueue<Item> writeQueue) {
+        try {
+            Item item;
+            while ((item = writeQueue.take()) != END) {
+                DocumentResult documentResult = results[item.index];
+                Path temp = null;
+                try {
+                    temp = Files.createTempFile(documentResult.output.toAbsolutePath().getParent(), "redacting", ".tmp");
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                        item.document.save(out);
+                    }
+                    Files.move(temp, documentResult.output, StandardCopyOption.REPLACE_EXISTING);
+                    documentResult.written = true;
+                } catch (Throwable ex) {
+                    documentResult.error = ex;
+                    deleteQuietly(temp);
+                } finally {
+                    close(item.document);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * end the next stage: one END for each of its threads
+     */
+    private static void end(BlockingQueue<Item> queue, int threads) {
+        try {
+            for (int t = 0; t < threads; t++) {
+                queue.put(END);
+            }
+        } catch (InterruptedException ex) {
+            // the whole pipeline is being stopped
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(PDDocument document) {
+        if (document == null) return;
+        try {
+            document.close();
+        } catch (IOException ex) {
+            // nothing more to do with it
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            // left behind, it has a .tmp name
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The outcome of a redaction run.
+ */
+public class RedactionResult {
+
+    public enum Outcome {
+        COMPLETE, // every page was processed
+        PARTIAL,  // stopped part-way; some pages were modified, the rest were not - do not publish the document
+        REJECTED  // stopped before the document was modified
+    }
+
+    private Outcome outcome = Outcome.COMPLETE;
+    private String reason = null; // why we stopped, null if complete
+    private int pageCount = 0; // number of pages in the document
+    private int pagesProcessed = 0; // number of pages fully processed
+    private boolean modified = false; // has the document been changed?
+    private int pagesBurnedIn = 0; // number of pages replaced by an image
+    private SanitiserReport sanitiserReport = new SanitiserReport(); // what was removed outside the pages
+    private final Map<PageClassifier.Kind, Integer> pageKinds = new EnumMap<>(PageClassifier.Kind.class);
+    private int textPassesSkipped = 0; // pages with words to find, but without fonts
+    private int imagePassesSkipped = 0; // pages with boxes, but without images
+
+    // constructor
+    RedactionResult() {
+    }
+
+    public Outcome getOutcome() { return outcome; }
+    public String getReason() { return reason; }
+    public int getPageCount() { return pageCount; }
+    public int getPagesProcessed() { return pagesProcessed; }
+    public boolean isModified() { return modified; }
+    public int getPagesBurnedIn() { return pagesBurnedIn; }
+    public SanitiserReport getSanitiserReport() { return sanitiserReport; }
+    public int getTextPassesSkipped() { return textPassesSkipped; }
+    public int getImagePassesSkipped() { return imagePassesSkipped; }
+
+    /**
+     * @param kind what a page is made of (see {@link PageClassifier}); pages whose content the redaction had no
+     *             need to scan for inline images are counted as UNSCANNED
+     * @return the number of pages processed of that kind
+     */
+    public int getPages(PageClassifier.Kind kind) {
+        return pageKinds.getOrDefault(kind, 0);
+    }
+
+    /**
+     * @return true if the document was fully redacted
+     */
+    public boolean isComplete() {
+        return outcome == Outcome.COMPLETE;
+    }
+
+    void setOutcome(Outcome outcome, String reason) {
+        this.outcome = outcome;
+        this.reason = reason;
+    }
+
+    void setPageCount(int pageCount) { this.pageCount = pageCount; }
+    void setPagesProcessed(int pagesProcessed) { this.pagesProcessed = pagesProcessed; }
+    void setModified() { this.modified = true; }
+    void pageBurnedIn() { this.pagesBurnedIn++; }
+    void setSanitiserReport(SanitiserReport sanitiserReport) { this.sanitiserReport = sanitiserReport; }
+    void pageClassified(PageClassifier.Kind kind) { pageKinds.merge(kind, 1, Integer::sum); }
+    void textPassSkipped() { this.textPassesSkipped++; }
+    void imagePassSkipped() { this.imagePassesSkipped++; }
+
+    @Override
+    public String toString() {
+        return outcome + " (" + pagesProcessed + "/" + pageCount + " pages)" + (reason != null ? ": " + reason : "");
+    }
+}
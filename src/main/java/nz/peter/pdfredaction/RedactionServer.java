@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-running redaction service, so that JIT, AWT/ImageIO, PDFBox and the compiled word patterns
+ * stay warm between documents.  Built on the JDK's own HTTP server, no extra dependencies.
+ * <p>
+ * POST /redact with the PDF as the request body returns the redacted PDF.  Query parameters:
+ * <ul>
+ *     <li>word=... (repeatable) words to redact, in addition to the server's default words</li>
+ *     <li>area=page,x,y,width,height (repeatable) areas to redact</li>
+ *     <li>outline=true to draw outlines instead of redacting</li>
+ * </ul>
+ * At most maxConcurrent documents are redacted at the same time and at most queueSize more wait
+ * for a slot, any further requests are refused with a 503 so the caller can go elsewhere.  Documents larger than
+ * the maximum request size are refused with a 413.
+ * GET /health returns 200 while the server is running.
+ */
+public class RedactionServer {
+
+    private final PdfRedaction redaction = new PdfRedaction();
+    private final List<String> defaultWords;
+    private final RedactionBudget budget; // per document limits, can be null
+    private final int maxConcurrent;
+    private final int queueSize;
+    private boolean useFixedFontMapper = true; // never scan the system fonts
+    private long maxRequestSize = 256L * 1024 * 1024; // bytes of a posted document, each is read into memory
+
+    private final Semaphore workers; // documents being redacted
+    private final AtomicInteger waiting = new AtomicInteger(0); // documents waiting for a worker
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    /**
+     * @param defaultWords  words redacted in every document, can be null or empty.
+     * @param budget        resource limits for each document, can be null for none.
+     * @param maxConcurrent the maximum number of documents redacted at the same time.
+     * @param queueSize     the maximum number of documents waiting for a slot.
+     */
+    public RedactionServer(List<String> defaultWords, RedactionBudget budget, int maxConcurrent, int queueSize) {
+        this.defaultWords = defaultWords != null ? new ArrayList<>(defaultWords) : Collections.emptyList();
+        this.budget = budget;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.queueSize = Math.max(0, queueSize);
+        this.workers = new Semaphore(this.maxConcurrent, true);
+
+        // pre-compile the default words so the first request doesn't pay for it
+        for (String word : this.defaultWords) {
+            if (word != null && !word.trim().isEmpty()) {
+                WordFinder.compile(word);
+            }
+        }
+    }
+
+    /**
+     * start listening
+     *
+     * @param host the address to bind to, e.g. "127.0.0.1"
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException if the server can't be started
+     */
+    public synchronized void start(String host, int port) throws IOException {
+        if (server != null) return;
+        RedactionWarmUp.warmUp(useFixedFontMapper);
+        server = HttpServer.create(new InetSocketAddress(host, port), maxConcurrent + queueSize);
+        server.createContext("/redact", this::handleRedact);
+        server.createContext("/health", this::handleHealth);
+        // one thread per admitted request, plus one to turn away the rest
+        executor = Executors.newFixedThreadPool(maxConcurrent + queueSize + 1);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * stop the server, waiting up to delaySeconds for requests in progress
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server == null) return;
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * @param useFixedFontMapper if true (the default) un-embedded fonts are mapped to a fixed font,
+     *                           see {@link FixedFontMapper}; installed when the server starts, even if the process
+     *                           was warmed up before.  Must be set before the server is started.
+     */
+    public void setUseFixedFontMapper(boolean useFixedFontMapper) {
+        this.useFixedFontMapper = useFixedFontMapper;
+    }
+
+    /**
+     * @param maxRequestSize the most bytes a posted document may have (256 MiB by default).  Every admitted
+     *                       document is read into memory whole, so this times (maxConcurrent + queueSize) bounds
+     *                       the memory uploads can take.  Must be set before the server is started.
+     */
+    public void setMaxRequestSize(long maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * @return the port the server is listening on, or -1 if not started
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        sendText(exchange, 200, "ok");
+    }
+
+    private void handleRedact(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "POST a PDF document");
+                return;
+            }
+
+            List<String> words = new ArrayList<>(defaultWords);
+            List<RectangleOnPage> areas = new ArrayList<>();
+            boolean outlineOnly = false;
+            try {
+                String query = exchange.getRequestURI().getRawQuery();
+                if (query != null) {
+                    for (String parameter : query.split("&")) {
+                        int index = parameter.indexOf('=');
+                        if (index <= 0) continue;
+                        String name = parameter.substring(0, index);
+                        String value = URLDecoder.decode(parameter.substring(index + 1), StandardCharsets.UTF_8);
+                        if ("word".equals(name)) {
+                            words.add(value);
+                        } else if ("area".equals(name)) {
+                            areas.add(parseArea(value));
+                        } else if ("outline".equals(name)) {
+                            outlineOnly = Boolean.parseBoolean(value);
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException ex) {
+                sendText(exchange, 400, "invalid parameter: " + ex.getMessage());
+                return;
+            }
+
+            // refuse what's too large before reading it, chunked uploads are counted as they're read
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (contentLength != null) {
+                try {
+                    if (Long.parseLong(contentLength.trim()) > maxRequestSize) {
+                        sendText(exchange, 413, "document larger than " + maxRequestSize + " bytes");
+                        return;
+                    }
+                } catch (NumberFormatException ex) {
+                    sendText(exchange, 400, "invalid Content-Length");
+                    return;
+                }
+            }
+
+            // admission: run now, wait in the queue, or go away
+            if (!workers.tryAcquire()) {
+                if (waiting.incrementAndGet() > queueSize) {
+                    waiting.decrementAndGet();
+                    sendText(exchange, 503, "busy");
+                    return;
+                }
+                try {
+                    workers.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendText(exchange, 503, "shutting down");
+                    return;
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+
+            try {
+                redact(exchange, words, areas, outlineOnly);
+            } catch (IOException | RuntimeException ex) {
+                // once the document is being streamed back it's too late, the client sees a cut-off response
+                if (exchange.getResponseCode() != -1) throw ex;
+                sendText(exchange, 500, "redaction failed: " + ex);
+            } finally {
+                workers.release();
+            }
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * load, redact and stream back a single document
+     */
+    private void redact(HttpExchange exchange, List<String> words, List<RectangleOnPage> areas, boolean outlineOnly) throws IOException {
+        PDDocument document;
+        try (InputStream in = new LimitedInputStream(exchange.getRequestBody(), maxRequestSize)) {
+            document = Loader.loadPDF(new RandomAccessReadBuffer(in));
+        } catch (RequestTooLargeException ex) {
+            sendText(exchange, 413, ex.getMessage());
+            return;
+        } catch (IOException ex) {
+            sendText(exchange, 400, "invalid PDF: " + ex.getMessage());
+            return;
+        }
+
+        try (document) {
+            RedactionOptions options = new RedactionOptions();
+            options.setBudget(budget);
+            RedactionResult result = redaction.redact(document, words, areas, outlineOnly, options);
+            if (!result.isComplete()) {
+                sendText(exchange, 422, result.toString());
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (OutputStream out = exchange.getResponseBody()) {
+                document.save(out);
+            }
+        }
+    }
+
+    /**
+     * parse "page,x,y,width,height"
+     */
+    private static RectangleOnPage parseArea(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("area must be page,x,y,width,height");
+        }
+        return new RectangleOnPage(
+                Integer.parseInt(parts[0].trim()),
+                Float.parseFloat(parts[1].trim()),
+                Float.parseFloat(parts[2].trim()),
+                Float.parseFloat(parts[3].trim()),
+                Float.parseFloat(parts[4].trim())
+        );
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * thrown by a {@link LimitedInputStream} once more than its limit has been read
+     */
+    private static class RequestTooLargeException extends IOException {
+        RequestTooLargeException(long limit) {
+            super("document larger than " + limit + " bytes");
+        }
+    }
+
+    /**
+     * counts the bytes read from a request body, and fails once there are more than a limit
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count = 0;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counted(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) counted(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counted(skipped);
+            return skipped;
+        }
+
+        private void counted(long n) throws RequestTooLargeException {
+            count += n;
+            if (count > limit) throw new RequestTooLargeException(limit);
+        }
+    }
+
+    /**
+     * run the server from the command line, on the loopback address unless a host is given: there's no
+     * authentication, anyone who can reach the port can have documents redacted.  Run with
+     * {@code -Djava.awt.headless=true} on machines without a display.
+     * usage: RedactionServer port [words-file (one word per line)] [max-concurrent] [queue-size] [host]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: RedactionServer port [words-file] [max-concurrent] [queue-size] [host]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        List<String> words = new ArrayList<>();
+        if (args.length > 1) {
+            for (String line : Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) words.add(line.trim());
+            }
+        }
+        int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int queueSize = args.length > 3 ? Integer.parseInt(args[3]) : maxConcurrent * 4;
+        String host = args.length > 4 ? args[4] : "127.0.0.1";
+
+        RedactionServer redactionServer = new RedactionServer(words, null, maxConcurrent, queueSize);
+        redactionServer.start(host, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> redactionServer.stop(5)));
+        System.out.println("redaction server listening on " + host + ":" + redactionServer.getPort());
+    }
+
+}
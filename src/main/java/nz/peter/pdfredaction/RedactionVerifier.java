@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Checks a redacted document: no content stream (of a page or any form it uses) may still show one of the
+ * redacted words, and every image region under a redaction area must be fully masked.  Unlike re-extracting
+ * the text with a {@link org.apache.pdfbox.text.PDFTextStripper}, the content streams are decoded in a single
+ * unsorted pass and images are only decoded where they overlap an area, sub-sampled.
+ */
+public class RedactionVerifier {
+
+    // maximum number of samples along each side of an image region
+    private static final int SAMPLES_PER_SIDE = 16;
+
+    private final int threads;
+
+    // constructor
+    public RedactionVerifier() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of pages checked in parallel by {@link #verify(byte[], List, List)}
+     */
+    public RedactionVerifier(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Verify a redacted document, one page at a time.
+     *
+     * @param document the redacted document
+     * @param words the words that were redacted, can be null or empty
+     * @param areas the areas that were redacted, can be null or empty
+     * @return the report
+     * @throws IOException if the document can't be read
+     */
+    public VerificationReport verify(PDDocument document, List<String> words, List<RectangleOnPage> areas) throws IOException {
+        VerificationReport report = new VerificationReport();
+        if (document == null) return report;
+        List<String> wordList = cleanWords(words);
+        List<Pattern> patterns = compile(wordList);
+        for (int i = 0; i < document.getNumberOfPages(); i++) {
+            verifyPage(document.getPage(i), i + 1, wordList, patterns, areas, report);
+        }
+        return report;
+    }
+
+    /**
+     * Verify a saved redacted document, checking pages in parallel.  A PDDocument can't be shared between
+     * threads, so each thread loads its own copy and checks every n-th page.
+     *
+     * @param pdf the bytes of the redacted document
+     * @param words the words that were redacted, can be null or empty
+     * @param areas the areas that were redacted, can be null or empty
+     * @return the report
+     * @throws IOException if the document can't be read
+     */
+    public VerificationReport verify(byte[] pdf, List<String> words, List<RectangleOnPage> areas) throws IOException {
+        VerificationReport report = new VerificationReport();
+        if (pdf == null) return report;
+        List<String> wordList = cleanWords(words);
+        List<Pattern> patterns = compile(wordList);
+
+        int numPages;
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            numPages = document.getNumberOfPages();
+            if (threads == 1 || numPages < 2) {
+                for (int i = 0; i < numPages; i++) {
+                    verifyPage(document.getPage(i), i + 1, wordList, patterns, areas, report);
+                }
+                return report;
+            }
+        }
+
+        int numThreads = Math.min(threads, numPages);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final int first = t;
+                futures.add(executor.submit(() -> {
+                    try (PDDocument document = Loader.loadPDF(pdf)) {
+                        for (int i = first; i < numPages; i += numThreads) {
+                            verifyPage(document.getPage(i), i + 1, wordList, patterns, areas, report);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("verification interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) throw ioException;
+            throw new IOException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return report;
+    }
+
+    /**
+     * check the text and images of a single page
+     */
+    private void verifyPage(
+            PDPage page,
+            int pageNum,
+            List<String> words,
+            List<Pattern> patterns,
+            List<RectangleOnPage> areas,
+            VerificationReport report
+    ) throws IOException {
+        if (page == null) return;
+
+        if (!patterns.isEmpty()) {
+            Set<COSBase> seenForms = Collections.newSetFromMap(new IdentityHashMap<>());
+            checkText(page, page.getResources(), pageNum, words, patterns, report, seenForms);
+        }
+
+        List<Rectangle2D> pageAreas = new ArrayList<>();
+        if (areas != null) {
+            for (RectangleOnPage area : areas) {
+                if (area.getPage() == pageNum) {
+                    pageAreas.add(new Rectangle2D.Float(area.getX(), area.getY(), area.getWidth(), area.getHeight()));
+                }
+            }
+        }
+        if (!pageAreas.isEmpty()) {
+            new ImageChecker(page, pageNum, pageAreas, report).processPage(page);
+        }
+        report.pageChecked();
+    }
+
+    /**
+     * Decode the text of a content stream, and of the forms in its resources, looking for the words.
+     * Text is matched per BT/ET block so that words split across several strings or a kerning array are found;
+     * text moved to another line, or further than a space along it, and wide kerning gaps are separated by a
+     * space so words on different lines don't run together (see {@link TextCursor}).
+     */
+    private void checkText(
+            PDContentStream contentStream,
+            PDResources resources,
+            int pageNum,
+            List<String> words,
+            List<Pattern> patterns,
+            VerificationReport report,
+            Set<COSBase> seenForms
+    ) throws IOException {
+        List<Object> tokens = new PDFStreamParser(contentStream).parse();
+        PDFont currentFont = null;
+        StringBuilder blockText = new StringBuilder();
+        TextCursor cursor = new TextCursor();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Object token = tokens.get(i);
+            if (token instanceof Operator op) {
+                String opName = op.getName();
+                cursor.operator(op, tokens, i);
+                if ("Tf".equals(opName) && i >= 2 && tokens.get(i - 2) instanceof COSName fontName) {
+                    currentFont = resources != null ? resources.getFont(fontName) : null;
+                } else if ("BT".equals(opName) || "ET".equals(opName)) {
+                    checkBlock(blockText, pageNum, words, patterns, report);
+                    blockText.setLength(0);
+                }
+            } else if (token instanceof COSString cosString) {
+                separate(cursor.beginShow(tokens, i), blockText);
+                appendDecoded(cosString, currentFont, blockText);
+                cursor.show(cosString, currentFont);
+            } else if (token instanceof COSArray array) {
+                separate(cursor.beginShow(tokens, i), blockText);
+                for (int j = 0; j < array.size(); j++) {
+                    if (array.get(j) instanceof COSString cosString) {
+                        appendDecoded(cosString, currentFont, blockText);
+                        cursor.show(cosString, currentFont);
+                    } else if (array.get(j) instanceof COSNumber number && cursor.adjust(number.floatValue())) {
+                        separate(false, blockText);
+                    }
+                }
+            }
+        }
+        checkBlock(blockText, pageNum, words, patterns, report);
+
+        // forms have their own content streams (and maybe their own resources)
+        if (resources != null) {
+            for (COSName name : resources.getXObjectNames()) {
+                PDXObject xObject = resources.getXObject(name);
+                if (xObject instanceof PDFormXObject form && seenForms.add(form.getCOSObject())) {
+                    PDResources formResources = form.getResources() != null ? form.getResources() : resources;
+                    checkText(form, formResources, pageNum, words, patterns, report, seenForms);
+                }
+            }
+        }
+    }
+
+    private static void separate(boolean continues, StringBuilder blockText) {
+        if (!continues && !blockText.isEmpty() && blockText.charAt(blockText.length() - 1) != ' ') {
+            blockText.append(' ');
+        }
+    }
+
+    private static void appendDecoded(COSString cosString, PDFont font, StringBuilder blockText) {
+        String decoded = PdfRedaction.decode(cosString, font);
+        if (decoded != null) {
+            blockText.append(decoded);
+        }
+    }
+
+    private static void checkBlock(StringBuilder blockText, int pageNum, List<String> words, List<Pattern> patterns, VerificationReport report) {
+        if (blockText.isEmpty()) return;
+        // the patterns are of folded words, so match on folded text
+        String text = TextIndex.fold(blockText);
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(text).find()) {
+                report.addFailure(pageNum, VerificationReport.FailureType.TEXT, "\"" + words.get(i) + "\" found in content stream");
+            }
+        }
+    }
+
+    private static List<String> cleanWords(List<String> words) {
+        List<String> wordList = new ArrayList<>();
+        if (words != null) {
+            for (String word : words) {
+                if (word != null && !word.trim().isEmpty()) {
+                    wordList.add(word);
+                }
+            }
+        }
+        return wordList;
+    }
+
+    private static List<Pattern> compile(List<String> words) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String word : words) {
+            patterns.add(WordFinder.compile(word));
+        }
+        return patterns;
+    }
+
+    /**
+     * Samples the parts of images under redaction areas, these must all be black.
+     */
+    private static class ImageChecker extends PDFGraphicsStreamEngine {
+
+        private final int pageNum;
+        private final List<Rectangle2D> areas;
+        private final VerificationReport report;
+
+        ImageChecker(PDPage page, int pageNum, List<Rectangle2D> areas, VerificationReport report) {
+            super(page);
+            this.pageNum = pageNum;
+            this.areas = areas;
+            this.report = report;
+        }
+
+        @Override
+        public void drawImage(PDImage image) throws IOException {
+            Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            Shape imageOutline = ImageRedactor.imageOutline(ctm);
+            // the same mapping as the ImageRedactor
+            AffineTransform pageToRaster = ImageRedactor.pageToRaster(ctm, image.getWidth(), image.getHeight());
+            if (pageToRaster == null) return;
+            Rectangle raster = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+
+            for (Rectangle2D area : areas) {
+                if (!imageOutline.intersects(area)) continue;
+                Shape masked = pageToRaster.createTransformedShape(area);
+
+                // less a pixel on each side for rounding
+                Rectangle bounds = masked.getBounds().intersection(raster);
+                bounds.grow(-1, -1);
+                if (bounds.width <= 0 || bounds.height <= 0) continue;
+
+                int subsampling = Math.max(1, Math.min(bounds.width, bounds.height) / SAMPLES_PER_SIDE);
+                BufferedImage region = image.getImage(bounds, subsampling);
+                report.imageChecked();
+                if (region != null && !isBlack(region, ImageRedactor.isAxisAligned(pageToRaster), masked, bounds, subsampling)) {
+                    report.addFailure(pageNum, VerificationReport.FailureType.IMAGE,
+                            "image region " + bounds.x + "," + bounds.y + " " + bounds.width + "x" + bounds.height + " not masked");
+                }
+            }
+        }
+
+        /**
+         * check the sampled pixels that lie well inside the masked shape (a rotated area only partly
+         * fills its bounding box), an axis aligned area fills all of it and is checked a scanline at a time
+         */
+        private static boolean isBlack(BufferedImage region, boolean axisAligned, Shape masked, Rectangle bounds, int subsampling) {
+            if (axisAligned) {
+                return RasterMask.isFilled(region, new Rectangle(0, 0, region.getWidth(), region.getHeight()));
+            }
+            for (int y = 0; y < region.getHeight(); y++) {
+                for (int x = 0; x < region.getWidth(); x++) {
+                    int rasterX = bounds.x + x * subsampling;
+                    int rasterY = bounds.y + y * subsampling;
+                    if (!masked.contains(rasterX - 1, rasterY - 1, 3, 3)) continue;
+                    if ((region.getRGB(x, y) & 0x00FFFFFF) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Required overrides for PDFGraphicsStreamEngine (No-ops for our use case)
+        @Override public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {}
+        @Override public void clip(int windingRule) {}
+        @Override public void moveTo(float x, float y) {}
+        @Override public void lineTo(float x, float y) {}
+        @Override public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {}
+        @Override public Point2D getCurrentPoint() { return new Point2D.Float(0, 0); }
+        @Override public void closePath() {}
+        @Override public void endPath() {}
+        @Override public void strokePath() {}
+        @Override public void fillPath(int windingRule) {}
+        @Override public void fillAndStrokePath(int windingRule) {}
+        @Override public void shadingFill(COSName shadingName) {}
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pays the one-off start-up costs of a redaction (class loading, AWT, the PDFBox glyph lists and standard
+ * font metrics, the Flate encoder, the text extraction and content stream code paths) up front, so the
+ * first real document isn't slowed down by them.  Call once when a process starts.
+ * <p>
+ * AWT is used for images only, never a display; servers without one should run with
+ * {@code -Djava.awt.headless=true}, it's the application's to set, not this library's.
+ */
+public class RedactionWarmUp {
+
+    private static boolean warm = false;
+
+    private RedactionWarmUp() {
+    }
+
+    /**
+     * Warm up the redaction code paths by redacting a small generated document.  Only the first call redacts
+     * anything, but every call installs the font mapper if asked.
+     *
+     * @param useFixedFontMapper if true, install a {@link FixedFontMapper} (unless one is installed already) so that
+     *                           un-embedded fonts never trigger a scan of the system fonts; it's process wide, and
+     *                           also used to render (burn-in, previews).  False leaves the mapper as it is.
+     * @throws IOException if the warm-up document can't be processed
+     */
+    public static synchronized void warmUp(boolean useFixedFontMapper) throws IOException {
+        if (useFixedFontMapper && !(FontMappers.instance() instanceof FixedFontMapper)) {
+            FontMappers.set(new FixedFontMapper());
+        }
+        if (warm) return;
+
+        byte[] pdf;
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+
+            BufferedImage bi = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = bi.createGraphics();
+            g2d.setColor(Color.RED);
+            g2d.fillRect(0, 0, 32, 32);
+            g2d.dispose();
+            PDImageXObject image = LosslessFactory.createFromImage(document, bi);
+
+            try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+                cs.beginText();
+                cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                cs.newLineAtOffset(100, 700);
+                cs.showText("warm up the redaction engine");
+                cs.endText();
+                cs.drawImage(image, 100, 100, 32, 32);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            pdf = out.toByteArray();
+        }
+
+        // the same path a real document takes: load, locate, redact, save
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            PdfRedaction redaction = new PdfRedaction();
+            List<String> words = Collections.singletonList("redaction");
+            redaction.getRedactionRectangles(document, words);
+            redaction.redact(document, words, Collections.singletonList(new RectangleOnPage(1, 110, 110, 10, 10)), false);
+            document.save(new ByteArrayOutputStream());
+        }
+        warm = true;
+    }
+
+}
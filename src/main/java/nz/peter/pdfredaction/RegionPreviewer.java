@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders small thumbnails of the regions around redaction boxes, for reviewing an outline-only redaction
+ * without rendering whole pages at full resolution.  For each page the area around all of its boxes is rendered
+ * once at a low resolution and every box is cropped out of that, with a margin.  Pages are rendered in parallel,
+ * each thread with its own copy of the document.
+ * <p>
+ * Thumbnails are upright: a page's /Rotate is applied to them.
+ */
+public class RegionPreviewer {
+
+    /**
+     * the thumbnail of one box
+     */
+    public static class Preview {
+        private final int page; // 1-based page number
+        private final int boxIndex; // the index of the box in the RedactionAreas
+        private final Rectangle2D box; // in page coordinates
+        private final byte[] image; // encoded in the previewer's format
+
+        Preview(int page, int boxIndex, Rectangle2D box, byte[] image) {
+            this.page = page;
+            this.boxIndex = boxIndex;
+            this.box = box;
+            this.image = image;
+        }
+
+        public int getPage() { return page; }
+        public int getBoxIndex() { return boxIndex; }
+        public Rectangle2D getBox() { return box; }
+        public byte[] getImage() { return image; }
+    }
+
+    private final float dpi;
+    private final float margin;
+    private final String format;
+    private final int threads;
+
+    /**
+     * @param dpi the resolution of the thumbnails, e.g. 50
+     * @param margin the space around each box included in its thumbnail, in points
+     * @param format the image format of the thumbnails, "png" or "jpg"
+     * @param threads the number of pages rendered at the same time by {@link #preview(byte[], RedactionAreas)}
+     */
+    public RegionPreviewer(float dpi, float margin, String format, int threads) {
+        this.dpi = dpi > 0 ? dpi : 50;
+        this.margin = Math.max(0, margin);
+        this.format = format != null ? format : "png";
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Thumbnails of the boxes of a document, one page at a time.
+     *
+     * @param document the document, for instance after an outline-only redaction
+     * @param boxes the boxes to preview, for instance from {@link PdfRedaction#getRedactionAreas(PDDocument, List)}
+     * @return a thumbnail per box, in the order of the boxes
+     * @throws IOException if a page can't be rendered
+     */
+    public List<Preview> preview(PDDocument document, RedactionAreas boxes) throws IOException {
+        if (document == null || boxes == null || boxes.isEmpty()) return new ArrayList<>();
+        Preview[] previews = new Preview[boxes.size()];
+        PDFRenderer renderer = new PDFRenderer(document);
+        for (int pageNum : boxes.getPageNumbers()) {
+            previewPage(document, renderer, pageNum, boxes, previews);
+        }
+        return collect(previews);
+    }
+
+    /**
+     * Thumbnails of the boxes of a saved document, rendering pages in parallel.
+     *
+     * @param pdf the bytes of the document
+     * @param boxes the boxes to preview
+     * @return a thumbnail per box, in the order of the boxes
+     * @throws IOException if the document can't be read or a page can't be rendered
+     */
+    public List<Preview> preview(byte[] pdf, RedactionAreas boxes) throws IOException {
+        if (pdf == null || boxes == null || boxes.isEmpty()) return new ArrayList<>();
+        int[] pageNumbers = boxes.getPageNumbers();
+        int numThreads = Math.min(threads, pageNumbers.length);
+        if (numThreads == 1) {
+            try (PDDocument document = Loader.loadPDF(pdf)) {
+                return preview(document, boxes);
+            }
+        }
+
+        Preview[] previews = new Preview[boxes.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final int first = t;
+                futures.add(executor.submit(() -> {
+                    try (PDDocument document = Loader.loadPDF(pdf)) {
+                        PDFRenderer renderer = new PDFRenderer(document);
+                        for (int i = first; i < pageNumbers.length; i += numThreads) {
+                            previewPage(document, renderer, pageNumbers[i], boxes, previews);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("preview interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) throw ioException;
+            throw new IOException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return collect(previews);
+    }
+
+    /**
+     * Render the area around all the boxes of a page once, then crop each box (with its margin) out of it.
+     * Each box is written to its own slot of previews, so threads never share one.
+     */
+    private void previewPage(PDDocument document, PDFRenderer renderer, int pageNum, RedactionAreas boxes, Preview[] previews) throws IOException {
+        if (pageNum < 1 || pageNum > document.getNumberOfPages()) return;
+        int start = boxes.pageStart(pageNum);
+        int end = boxes.pageEnd(pageNum);
+        PDPage page = document.getPage(pageNum - 1);
+        PDRectangle cropBox = page.getCropBox();
+        float scale = dpi / 72f;
+
+        // the area around all boxes, with their margins, limited to the page
+        Rectangle2D area = null;
+        for (int i = start; i < end; i++) {
+            Rectangle2D box = withMargin(boxes, i);
+            area = area == null ? box : area.createUnion(box);
+        }
+        Rectangle2D pageArea = new Rectangle2D.Float(cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getWidth(), cropBox.getHeight());
+        area = area.createIntersection(pageArea);
+        if (area.isEmpty()) return;
+
+        int widthPx = Math.max(1, (int) Math.ceil(area.getWidth() * scale));
+        int heightPx = Math.max(1, (int) Math.ceil(area.getHeight() * scale));
+        BufferedImage rendered = new BufferedImage(widthPx, heightPx, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = rendered.createGraphics();
+        // the renderer clears with the background colour, which is black by default
+        g2d.setBackground(Color.WHITE);
+        g2d.clearRect(0, 0, widthPx, heightPx);
+        // the renderer puts the top-left of the crop box at 0,0, move the top-left of the area there instead
+        g2d.translate(-(area.getMinX() - cropBox.getLowerLeftX()) * scale, -(cropBox.getUpperRightY() - area.getMaxY()) * scale);
+
+        // render unrotated, the thumbnails are turned afterwards
+        int rotation = page.getRotation();
+        page.setRotation(0);
+        try {
+            renderer.renderPageToGraphics(pageNum - 1, g2d, scale);
+        } finally {
+            page.setRotation(rotation);
+            g2d.dispose();
+        }
+
+        for (int i = start; i < end; i++) {
+            Rectangle2D box = withMargin(boxes, i).createIntersection(area);
+            if (box.isEmpty()) continue;
+            int x = (int) Math.floor((box.getMinX() - area.getMinX()) * scale);
+            int y = (int) Math.floor((area.getMaxY() - box.getMaxY()) * scale);
+            int w = Math.max(1, Math.min(widthPx - x, (int) Math.ceil(box.getWidth() * scale)));
+            int h = Math.max(1, Math.min(heightPx - y, (int) Math.ceil(box.getHeight() * scale)));
+            BufferedImage thumbnail = rotate(rendered.getSubimage(x, y, w, h), rotation);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(thumbnail, format, out)) {
+                throw new IOException("no image writer for " + format);
+            }
+            Rectangle2D original = new Rectangle2D.Float(boxes.getX(i), boxes.getY(i), boxes.getWidth(i), boxes.getHeight(i));
+            previews[i] = new Preview(pageNum, i, original, out.toByteArray());
+        }
+    }
+
+    private Rectangle2D withMargin(RedactionAreas boxes, int i) {
+        return new Rectangle2D.Float(boxes.getX(i) - margin, boxes.getY(i) - margin,
+                boxes.getWidth(i) + 2 * margin, boxes.getHeight(i) + 2 * margin);
+    }
+
+    /**
+     * turn an image clockwise by a page rotation (0, 90, 180 or 270 degrees)
+     */
+    static BufferedImage rotate(BufferedImage image, int rotation) {
+        int quarterTurns = Math.floorMod(rotation / 90, 4);
+        if (quarterTurns == 0) return image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean sideways = quarterTurns % 2 == 1;
+        BufferedImage rotated = new BufferedImage(sideways ? h : w, sideways ? w : h, BufferedImage.TYPE_INT_RGB);
+        AffineTransform transform = new AffineTransform();
+        if (quarterTurns == 1) transform.translate(h, 0);
+        else if (quarterTurns == 2) transform.translate(w, h);
+        else transform.translate(0, w);
+        transform.rotate(quarterTurns * Math.PI / 2);
+        Graphics2D g2d = rotated.createGraphics();
+        g2d.drawImage(image, transform, null);
+        g2d.dispose();
+        return rotated;
+    }
+
+    /**
+     * the previews in box order, leaving out boxes off their page
+     */
+    private static List<Preview> collect(Preview[] previews) {
+        List<Preview> list = new ArrayList<>(previews.length);
+        for (Preview preview : Arrays.asList(previews)) {
+            if (preview != null) list.add(preview);
+        }
+        return list;
+    }
+
+}
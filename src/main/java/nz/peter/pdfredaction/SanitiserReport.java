@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * What a {@link DocumentSanitiser} removed: per category the number of entries and the bytes of the strings
+ * and streams under them.
+ */
+public class SanitiserReport {
+
+    private final Map<DocumentSanitiser.Category, Long> removed = new EnumMap<>(DocumentSanitiser.Category.class);
+    private final Map<DocumentSanitiser.Category, Long> removedBytes = new EnumMap<>(DocumentSanitiser.Category.class);
+
+    // constructor
+    SanitiserReport() {
+    }
+
+    /**
+     * @param category a category
+     * @return the number of entries of the category removed
+     */
+    public long getRemoved(DocumentSanitiser.Category category) {
+        return removed.getOrDefault(category, 0L);
+    }
+
+    /**
+     * @param category a category
+     * @return the bytes removed with the entries of the category
+     */
+    public long getRemovedBytes(DocumentSanitiser.Category category) {
+        return removedBytes.getOrDefault(category, 0L);
+    }
+
+    /**
+     * @return the bytes removed over all categories
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (long bytes : removedBytes.values()) total += bytes;
+        return total;
+    }
+
+    void removed(DocumentSanitiser.Category category, long bytes) {
+        removed.merge(category, 1L, Long::sum);
+        removedBytes.merge(category, bytes, Long::sum);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<DocumentSanitiser.Category, Long> entry : removed.entrySet()) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(entry.getKey()).append(": ").append(entry.getValue())
+                    .append(" (").append(removedBytes.get(entry.getKey())).append(" bytes)");
+        }
+        return sb.isEmpty() ? "nothing removed" : sb.toString();
+    }
+}
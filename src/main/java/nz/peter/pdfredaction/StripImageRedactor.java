@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Masks images too large to decode into a {@link java.awt.image.BufferedImage}, a band of rows at a time: the
+ * samples are read straight from the (Flate) stream, the rows under the boxes are set to black and the result is
+ * compressed into a scratch file, which is then copied into the new image stream.  Decoding and masking take the
+ * band, whatever the size of the image; the compressed result is held where the document keeps its streams, on
+ * the heap unless the document was loaded with a scratch file stream cache (see
+ * {@link org.apache.pdfbox.io.IOUtils#createTempFileOnlyStreamCache()}).  A soft mask is masked the same way.
+ * <p>
+ * Handles what large drawings and scans are stored as: uncompressed or Flate data (with or without PNG
+ * predictors), 1, 8 or 16 bits per component, in grey, RGB or CMYK (device or ICC based).  Anything else goes
+ * through {@link ImageRedactor}'s normal path.
+ */
+final class StripImageRedactor {
+
+    // the smallest band worth reading at a time
+    private static final int MIN_BAND_BYTES = 64 * 1024;
+
+    // the entries of an image dictionary that describe its samples, and are kept for the masked image
+    private static final Set<COSName> KEPT_ENTRIES = Set.of(COSName.TYPE, COSName.SUBTYPE, COSName.WIDTH,
+            COSName.HEIGHT, COSName.COLORSPACE, COSName.BITS_PER_COMPONENT, COSName.DECODE, COSName.INTENT,
+            COSName.INTERPOLATE, COSName.IMAGE_MASK, COSName.NAME);
+
+    private final long memoryLimit;
+
+    /**
+     * @param memoryLimit the number of bytes an image may use, larger images are masked in bands of this size
+     */
+    StripImageRedactor(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @param image an image
+     * @return true if decoding the image whole would take more memory than allowed
+     */
+    boolean isLarge(PDImageXObject image) {
+        return memoryLimit > 0 && MemoryEstimator.estimateImage(image.getCOSObject()) > memoryLimit;
+    }
+
+    /**
+     * @param image an image
+     * @return true if the image is stored in a way that can be masked a band at a time
+     */
+    boolean canRedact(PDImageXObject image) throws IOException {
+        return Samples.of(image) != null;
+    }
+
+    /**
+     * Mask an image, a band of rows at a time.
+     *
+     * @param document the document the image belongs to
+     * @param image the image, must be one {@link #canRedact(PDImageXObject)} accepts
+     * @param rasterBoxes the boxes to mask, in raster coordinates (origin top-left, one unit per pixel)
+     * @return the masked image, to replace the original with
+     * @throws IOException if the image data can't be read, or the scratch file can't be written
+     */
+    PDImageXObject redact(PDDocument document, PDImageXObject image, List<Shape> rasterBoxes) throws IOException {
+        Samples samples = Samples.of(image);
+        if (samples == null) throw new IOException("image can't be masked in bands");
+        List<double[]> polygons = new ArrayList<>(rasterBoxes.size());
+        for (Shape box : rasterBoxes) {
+            polygons.add(polygon(box));
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowBytes = samples.rowBytes(width);
+        int inputRowBytes = rowBytes + (samples.pngPredictor ? 1 : 0);
+        int bandRows = (int) Math.max(1, Math.min(height, Math.max(MIN_BAND_BYTES, memoryLimit / 2) / inputRowBytes));
+
+        Path scratch = Files.createTempFile("redact-strips", ".tmp");
+        try {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try (InputStream in = samples.open(image.getCOSObject());
+                 OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(scratch), 1 << 16), deflater, 1 << 16)) {
+                byte[] band = new byte[bandRows * inputRowBytes];
+                byte[] previous = new byte[rowBytes]; // the unfiltered row above, for the PNG predictors
+                for (int y0 = 0; y0 < height; y0 += bandRows) {
+                    int rows = Math.min(bandRows, height - y0);
+                    int read = in.readNBytes(band, 0, rows * inputRowBytes);
+                    // a truncated stream: the missing samples are zero, as PDFBox reads them
+                    Arrays.fill(band, read, rows * inputRowBytes, (byte) 0);
+                    for (int r = 0; r < rows; r++) {
+                        int offset = r * inputRowBytes;
+                        if (samples.pngPredictor) {
+                            unfilter(band, offset, rowBytes, samples.bytesPerPixel(), previous);
+                            offset++;
+                            System.arraycopy(band, offset, previous, 0, rowBytes);
+                        }
+                        maskRow(band, offset, y0 + r, width, polygons, samples);
+                        out.write(band, offset, rowBytes);
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+
+            // the new image: what describes the samples, with the new data.  Nothing else of the original is kept,
+            // a soft mask (often the shape of a signature or photo) is masked as well, or dropped if it can't be,
+            // a stencil mask and metadata are dropped
+            COSStream stream = document.getDocument().createCOSStream();
+            for (Map.Entry<COSName, COSBase> entry : image.getCOSObject().entrySet()) {
+                COSName key = entry.getKey();
+                if (KEPT_ENTRIES.contains(key) || (COSName.MASK.equals(key) && entry.getValue() instanceof COSArray)) {
+                    stream.setItem(key, entry.getValue());
+                }
+            }
+            PDImageXObject softMask = image.getSoftMask();
+            if (softMask != null && canRedact(softMask)) {
+                AffineTransform scale = AffineTransform.getScaleInstance(
+                        (double) softMask.getWidth() / width, (double) softMask.getHeight() / height);
+                List<Shape> maskBoxes = new ArrayList<>(rasterBoxes.size());
+                for (Shape box : rasterBoxes) {
+                    maskBoxes.add(scale.createTransformedShape(box));
+                }
+                stream.setItem(COSName.SMASK, redact(document, softMask, maskBoxes));
+            }
+            // the compressed data goes where the document keeps its streams: on the heap, unless the document
+            // was loaded with a scratch file stream cache
+            try (InputStream in = Files.newInputStream(scratch); OutputStream out = stream.createRawOutputStream()) {
+                in.transferTo(out);
+            }
+            stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+            return new PDImageXObject(new PDStream(stream), null);
+        } finally {
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    /**
+     * set the pixels of a row whose centre is inside a box to black
+     */
+    private static void maskRow(byte[] row, int offset, int y, int width, List<double[]> polygons, Samples samples) {
+        double centre = y + 0.5;
+        for (double[] polygon : polygons) {
+            double[] span = span(polygon, centre);
+            if (span == null) continue;
+            int x0 = Math.max(0, (int) Math.ceil(span[0] - 0.5));
+            int x1 = Math.min(width, (int) Math.ceil(span[1] - 0.5));
+            if (x0 < x1) samples.fill(row, offset, x0, x1);
+        }
+    }
+
+    /**
+     * the corners of a (transformed rectangle) shape, x0, y0, x1, y1, ...
+     */
+    static double[] polygon(Shape shape) {
+        double[] points = new double[16];
+        int n = 0;
+        double[] coords = new double[6];
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                if (n == points.length) points = Arrays.copyOf(points, n * 2);
+                points[n++] = coords[0];
+                points[n++] = coords[1];
+            }
+        }
+        return Arrays.copyOf(points, n);
+    }
+
+    /**
+     * Where a horizontal line crosses a convex polygon.
+     *
+     * @param polygon the corners
+     * @param y the line
+     * @return the smallest and largest x inside the polygon on the line, or null if the line misses it
+     */
+    static double[] span(double[] polygon, double y) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int corners = polygon.length / 2;
+        for (int i = 0; i < corners; i++) {
+            double xa = polygon[2 * i];
+            double ya = polygon[2 * i + 1];
+            double xb = polygon[2 * ((i + 1) % corners)];
+            double yb = polygon[2 * ((i + 1) % corners) + 1];
+            if (y < Math.min(ya, yb) || y > Math.max(ya, yb)) continue;
+            if (ya == yb) {
+                min = Math.min(min, Math.min(xa, xb));
+                max = Math.max(max, Math.max(xa, xb));
+            } else {
+                double x = xa + (y - ya) * (xb - xa) / (yb - ya);
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+            }
+        }
+        return min <= max ? new double[] {min, max} : null;
+    }
+
+    /**
+     * undo the PNG filter of a row in place, the filter type byte is at offset
+     */
+    private static void unfilter(byte[] data, int offset, int rowBytes, int bpp, byte[] above) {
+        int type = data[offset];
+        int start = offset + 1;
+        for (int i = 0; i < rowBytes; i++) {
+            int a = i >= bpp ? data[start + i - bpp] & 0xFF : 0;
+            int b = above[i] & 0xFF;
+            int c = i >= bpp ? above[i - bpp] & 0xFF : 0;
+            int predicted = switch (type) {
+                case 1 -> a;
+                case 2 -> b;
+                case 3 -> (a + b) >> 1;
+                case 4 -> paeth(a, b, c);
+                default -> 0;
+            };
+            data[start + i] = (byte) (data[start + i] + predicted);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * how the samples of an image are stored, and what black looks like in them
+     */
+    private static final class Samples {
+        private final int components;
+        private final int bitsPerComponent;
+        private final boolean flate;
+        private final boolean pngPredictor;
+        private final int[] black; // the sample value of black, per component
+
+        private Samples(int components, int bitsPerComponent, boolean flate, boolean pngPredictor, int[] black) {
+            this.components = components;
+            this.bitsPerComponent = bitsPerComponent;
+            this.flate = flate;
+            this.pngPredictor = pngPredictor;
+            this.black = black;
+        }
+
+        int rowBytes(int width) {
+            return (int) (((long) width * components * bitsPerComponent + 7) / 8);
+        }
+
+        int bytesPerPixel() {
+            return Math.max(1, components * bitsPerComponent / 8);
+        }
+
+        InputStream open(COSStream stream) throws IOException {
+            InputStream raw = stream.createRawInputStream();
+            if (!flate) return raw;
+            // our own inflater, so closing the stream doesn't end it: end it on close
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(raw, inflater, 1 << 16) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        /**
+         * set pixels x0..x1-1 of a row to black
+         */
+        void fill(byte[] row, int offset, int x0, int x1) {
+            if (bitsPerComponent == 1) {
+                // one component, a bit per pixel, leftmost in the high bit
+                for (int x = x0; x < x1; x++) {
+                    int index = offset + (x >> 3);
+                    int bit = 0x80 >> (x & 7);
+                    row[index] = (byte) (black[0] != 0 ? row[index] | bit : row[index] & ~bit);
+                }
+                return;
+            }
+            int bytesPerComponent = bitsPerComponent / 8;
+            int pixelBytes = components * bytesPerComponent;
+            for (int x = x0; x < x1; x++) {
+                int i = offset + x * pixelBytes;
+                for (int c = 0; c < components; c++) {
+                    if (bytesPerComponent == 2) {
+                        row[i++] = (byte) (black[c] >> 8);
+                    }
+                    row[i++] = (byte) black[c];
+                }
+            }
+        }
+
+        /**
+         * @return how an image is stored, or null if it can't be read a band at a time
+         */
+        static Samples of(PDImageXObject image) throws IOException {
+            if (image.isStencil()) return null;
+            COSStream stream = image.getCOSObject();
+            int bitsPerComponent = image.getBitsPerComponent();
+            PDColorSpace colorSpace = image.getColorSpace();
+            int components;
+            if (colorSpace instanceof PDDeviceGray || colorSpace instanceof PDDeviceRGB || colorSpace instanceof PDDeviceCMYK
+                    || colorSpace instanceof PDICCBased) {
+                components = colorSpace.getNumberOfComponents();
+            } else {
+                return null;
+            }
+            if (components != 1 && components != 3 && components != 4) return null;
+            if (bitsPerComponent != 8 && bitsPerComponent != 16 && !(bitsPerComponent == 1 && components == 1)) return null;
+
+            // no filter, or Flate alone, optionally with PNG predictors matching the image
+            COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+            if (filter instanceof COSArray array) {
+                if (array.size() > 1) return null;
+                filter = array.size() == 1 ? array.getObject(0) : null;
+            }
+            boolean flate = COSName.FLATE_DECODE.equals(filter) || COSName.FLATE_DECODE_ABBREVIATION.equals(filter);
+            if (filter != null && !flate) return null;
+            boolean pngPredictor = false;
+            COSBase parms = stream.getDictionaryObject(COSName.DECODE_PARMS);
+            if (parms instanceof COSArray array) {
+                parms = array.size() > 0 ? array.getObject(0) : null;
+            }
+            if (flate && parms instanceof COSDictionary decodeParms) {
+                int predictor = decodeParms.getInt(COSName.PREDICTOR, 1);
+                if (predictor >= 10) {
+                    if (decodeParms.getInt(COSName.COLORS, 1) != components
+                            || decodeParms.getInt(COSName.BITS_PER_COMPONENT, 8) != bitsPerComponent
+                            || decodeParms.getInt(COSName.COLUMNS, 1) != image.getWidth()) {
+                        return null;
+                    }
+                    pngPredictor = true;
+                } else if (predictor != 1) {
+                    return null; // TIFF predictor
+                }
+            }
+
+            // black is 0 in every component, but for K in CMYK; a Decode array can turn samples around
+            int maxValue = (1 << bitsPerComponent) - 1;
+            COSArray decode = stream.getCOSArray(COSName.DECODE);
+            int[] black = new int[components];
+            for (int c = 0; c < components; c++) {
+                double value = components == 4 && c == 3 ? 1 : 0;
+                double dMin = 0;
+                double dMax = 1;
+                if (decode != null && decode.size() >= 2 * components
+                        && decode.getObject(2 * c) instanceof COSNumber min && decode.getObject(2 * c + 1) instanceof COSNumber max) {
+                    dMin = min.floatValue();
+                    dMax = max.floatValue();
+                }
+                double sample = dMax == dMin ? 0 : (value - dMin) / (dMax - dMin) * maxValue;
+                black[c] = (int) Math.round(Math.max(0, Math.min(maxValue, sample)));
+            }
+            return new Samples(components, bitsPerComponent, flate, pngPredictor, black);
+        }
+    }
+
+}
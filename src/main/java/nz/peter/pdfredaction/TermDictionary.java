@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A very large list of terms (millions of names) compiled once into a trie file, which is memory-mapped
+ * read-only when used.  Opening a dictionary takes milliseconds whatever its size, it costs no heap, and the
+ * operating system shares the mapped pages between all processes using the same file.
+ * <p>
+ * Terms are folded like words (see {@link TextIndex}: case, diacritics, ligatures, full-width forms) and matched
+ * against folded text, on word boundaries.  Install a
+ * dictionary with {@link RedactionOptions#setDictionary(TermDictionary)}, it's used next to (or instead of)
+ * the list of words, both to locate matches and to scrub them from the content stream.
+ * <p>
+ * The file is a header followed by the nodes of the trie in breadth-first order, so the children of a node
+ * are consecutive and sorted by their character:
+ * <pre>
+ *     int magic, int version, int node count
+ *     per node: char label, char flags (1 = a term ends here), int first child, int child count
+ * </pre>
+ * Compile a term list (UTF-8, one term per line) with
+ * <pre>
+ *     java -cp pdf-redaction.jar nz.peter.pdfredaction.TermDictionary terms.txt terms.dict
+ * </pre>
+ */
+public class TermDictionary {
+
+    private static final int MAGIC = 0x50445444; // "PDTD"
+    private static final int VERSION = 2; // 2: terms folded like TextIndex
+    private static final int HEADER_SIZE = 12;
+    private static final int NODE_SIZE = 12;
+    private static final char TERMINAL = 1;
+
+    /**
+     * receives the matches of {@link #find(CharSequence, MatchConsumer)}
+     */
+    public interface MatchConsumer {
+        /**
+         * @param start the index of the first character of the match
+         * @param end the index after the last character of the match
+         */
+        void found(int start, int end);
+    }
+
+    private final ByteBuffer trie;
+    private final int nodeCount;
+
+    // constructor
+    private TermDictionary(ByteBuffer trie) throws IOException {
+        if (trie.capacity() < HEADER_SIZE || trie.getInt(0) != MAGIC) {
+            throw new IOException("not a term dictionary");
+        }
+        if (trie.getInt(4) != VERSION) {
+            throw new IOException("unsupported term dictionary version " + trie.getInt(4));
+        }
+        this.nodeCount = trie.getInt(8);
+        if ((long) HEADER_SIZE + (long) nodeCount * NODE_SIZE > trie.capacity()) {
+            throw new IOException("term dictionary is truncated");
+        }
+        this.trie = trie;
+    }
+
+    /**
+     * Map a compiled dictionary file.
+     *
+     * @param file a file written by {@link #compile(Collection, Path)}
+     * @return the dictionary
+     * @throws IOException if the file can't be read or isn't a dictionary
+     */
+    public static TermDictionary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("term dictionary too large to map: " + channel.size() + " bytes");
+            }
+            // the mapping stays valid after the channel is closed
+            return new TermDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Compile a term list file (UTF-8, one term per line, blank lines are ignored) into a dictionary file.
+     *
+     * @param termList the term list
+     * @param output the dictionary file to write
+     * @throws IOException if reading or writing fails
+     */
+    public static void compile(Path termList, Path output) throws IOException {
+        List<String> terms = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(termList, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                terms.add(line);
+            }
+        }
+        compile(terms, output);
+    }
+
+    /**
+     * Compile terms into a dictionary file.
+     *
+     * @param terms the terms, leading and trailing white space is ignored
+     * @param output the dictionary file to write
+     * @throws IOException if writing fails, or the dictionary would be too large to map
+     */
+    public static void compile(Collection<String> terms, Path output) throws IOException {
+        // normalise, then sort and remove duplicates: the terms under a node of the trie are then a range
+        List<String> sorted = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            if (term == null) continue;
+            String normalised = normalise(term.trim());
+            if (!normalised.isEmpty()) sorted.add(normalised);
+        }
+        Collections.sort(sorted);
+        List<String> unique = new ArrayList<>(sorted.size());
+        for (String term : sorted) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(term)) unique.add(term);
+        }
+        sorted = null; // let the sorted copy go, the list can be large
+
+        // breadth first: a node is a range of terms sharing a prefix {lo, hi, depth, label}, its children are
+        // numbered as they're queued so they end up next to each other
+        Path temp = Files.createTempFile(output.toAbsolutePath().getParent(), "terms", ".tmp");
+        try {
+            int nodeCount = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                Deque<int[]> queue = new ArrayDeque<>();
+                queue.add(new int[] {0, unique.size(), 0, 0});
+                int nextNode = 1;
+                while (!queue.isEmpty()) {
+                    int[] node = queue.poll();
+                    int lo = node[0], hi = node[1], depth = node[2];
+                    boolean terminal = lo < hi && unique.get(lo).length() == depth;
+
+                    int firstChild = nextNode;
+                    int childCount = 0;
+                    int i = terminal ? lo + 1 : lo;
+                    while (i < hi) {
+                        char c = unique.get(i).charAt(depth);
+                        int j = i + 1;
+                        while (j < hi && unique.get(j).charAt(depth) == c) j++;
+                        queue.add(new int[] {i, j, depth + 1, c});
+                        childCount++;
+                        i = j;
+                    }
+                    nextNode += childCount;
+                    if ((long) HEADER_SIZE + (long) nextNode * NODE_SIZE > Integer.MAX_VALUE) {
+                        throw new IOException("too many terms for a single dictionary");
+                    }
+
+                    out.writeChar(node[3]);
+                    out.writeChar(terminal ? TERMINAL : 0);
+                    out.writeInt(childCount > 0 ? firstChild : 0);
+                    out.writeInt(childCount);
+                    nodeCount++;
+                }
+            }
+
+            // the header needs the node count, which is only known now
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(nodeCount);
+                Files.copy(temp, out);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Find every term in a piece of text, on word boundaries.  Terms starting at the same position are all
+     * reported, shortest first.
+     *
+     * @param text the text to search, folded (see {@link TextIndex#getText()})
+     * @param consumer receives the start and end of every match
+     */
+    public void find(CharSequence text, MatchConsumer consumer) {
+        if (text == null || consumer == null) return;
+        int length = text.length();
+        for (int start = 0; start < length; start++) {
+            if (start > 0 && isWordChar(text.charAt(start - 1))) continue;
+            int node = 0;
+            for (int i = start; i < length; i++) {
+                node = child(node, Character.toLowerCase(text.charAt(i)));
+                if (node < 0) break;
+                if (isTerminal(node) && (i + 1 == length || !isWordChar(text.charAt(i + 1)))) {
+                    consumer.found(start, i + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param term a term
+     * @return true if the term is in the dictionary (ignoring case)
+     */
+    public boolean contains(String term) {
+        if (term == null || term.isEmpty()) return false;
+        String folded = normalise(term);
+        int node = 0;
+        for (int i = 0; i < folded.length() && node >= 0; i++) {
+            node = child(node, folded.charAt(i));
+        }
+        return node >= 0 && isTerminal(node);
+    }
+
+    /**
+     * @return the number of nodes in the trie
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * binary search the children of a node for a character
+     *
+     * @return the child, or -1 if there is none
+     */
+    private int child(int node, char c) {
+        int offset = HEADER_SIZE + node * NODE_SIZE;
+        int lo = trie.getInt(offset + 4);
+        int hi = lo + trie.getInt(offset + 8) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char label = trie.getChar(HEADER_SIZE + mid * NODE_SIZE);
+            if (label < c) lo = mid + 1;
+            else if (label > c) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private boolean isTerminal(int node) {
+        return (trie.getChar(HEADER_SIZE + node * NODE_SIZE + 2) & TERMINAL) != 0;
+    }
+
+    /**
+     * the characters of a regex \w, so matches end where those of {@link WordFinder#compile(String)} do
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * fold a term the way the text it's matched against is folded
+     */
+    private static String normalise(String term) {
+        return TextIndex.fold(term);
+    }
+
+    /**
+     * compile a term list: TermDictionary terms.txt terms.dict
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: TermDictionary <term list, one per line> <dictionary file>");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        compile(Path.of(args[0]), Path.of(args[1]));
+        TermDictionary dictionary = open(Path.of(args[1]));
+        System.out.println("compiled " + dictionary.getNodeCount() + " nodes in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+}
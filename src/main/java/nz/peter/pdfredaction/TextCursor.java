@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Follows the text position through the text operators of a content stream, to tell where one run of text
+ * continues another: the same word split into several strings with a Tm or Td between them (as some producers
+ * do to adjust spacing) is still one word, while text moved to another line, or further along the line than a
+ * space, is not.  Used by the scrubber and the verifier alike, so both see the same word boundaries.
+ * <p>
+ * Widths are those of the fonts, with character and word spacing and horizontal scaling; the text rise and
+ * vertical writing are ignored.
+ */
+final class TextCursor {
+
+    // how far (in units of the font size) text may be moved and still continue the text before it
+    private static final float SAME_LINE = 0.3f;
+    // a kerning adjustment (in thousandths of the font size) that opens a gap as wide as a space
+    private static final float SPACE_ADJUSTMENT = -200;
+
+    private final float[] textMatrix = {1, 0, 0, 1, 0, 0}; // a b c d e f
+    private final float[] lineMatrix = {1, 0, 0, 1, 0, 0};
+    private final float[] lastEnd = new float[6]; // the text matrix where the last text ended
+    private boolean hasLast = false;
+    private float fontSize = 1;
+    private float charSpacing = 0;
+    private float wordSpacing = 0;
+    private float horizontalScaling = 1;
+    private float leading = 0;
+
+    /**
+     * Follow a text state or positioning operator.
+     *
+     * @param op the operator
+     * @param tokens the tokens of the content stream
+     * @param index the index of the operator in the tokens, its operands are right before it
+     */
+    void operator(Operator op, List<Object> tokens, int index) {
+        switch (op.getName()) {
+            case "BT" -> {
+                set(textMatrix, 1, 0, 0, 1, 0, 0);
+                set(lineMatrix, 1, 0, 0, 1, 0, 0);
+                hasLast = false;
+            }
+            case "Tf" -> fontSize = number(tokens, index, 1, fontSize);
+            case "Tc" -> charSpacing = number(tokens, index, 1, charSpacing);
+            case "Tw" -> wordSpacing = number(tokens, index, 1, wordSpacing);
+            case "Tz" -> horizontalScaling = number(tokens, index, 1, horizontalScaling * 100) / 100;
+            case "TL" -> leading = number(tokens, index, 1, leading);
+            case "Td" -> moveLine(number(tokens, index, 2, 0), number(tokens, index, 1, 0));
+            case "TD" -> {
+                leading = -number(tokens, index, 1, 0);
+                moveLine(number(tokens, index, 2, 0), -leading);
+            }
+            case "Tm" -> {
+                set(lineMatrix, number(tokens, index, 6, 1), number(tokens, index, 5, 0), number(tokens, index, 4, 0),
+                        number(tokens, index, 3, 1), number(tokens, index, 2, 0), number(tokens, index, 1, 0));
+                System.arraycopy(lineMatrix, 0, textMatrix, 0, 6);
+            }
+            case "T*" -> moveLine(0, -leading);
+            case "\"" -> {
+                wordSpacing = number(tokens, index, 3, wordSpacing);
+                charSpacing = number(tokens, index, 2, charSpacing);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Called before the string (or array) operand of a text showing operator is shown.
+     *
+     * @param tokens the tokens of the content stream
+     * @param index the index of the operand
+     * @return true if the text continues the text shown before it, on the same line and without a gap
+     */
+    boolean beginShow(List<Object> tokens, int index) {
+        // ' and " move to the next line first, their operands come before them
+        for (int i = index + 1; i < tokens.size(); i++) {
+            if (tokens.get(i) instanceof Operator op) {
+                if ("'".equals(op.getName()) || "\"".equals(op.getName())) {
+                    moveLine(0, -leading);
+                }
+                break;
+            }
+        }
+        if (!hasLast) return false;
+        for (int i = 0; i < 4; i++) {
+            if (Math.abs(textMatrix[i] - lastEnd[i]) > 1e-3f * Math.max(1, Math.abs(lastEnd[i]))) return false;
+        }
+        // the move since the end of the last text, in text space
+        float a = textMatrix[0];
+        float b = textMatrix[1];
+        float c = textMatrix[2];
+        float d = textMatrix[3];
+        float det = a * d - b * c;
+        if (det == 0) return false;
+        float de = textMatrix[4] - lastEnd[4];
+        float df = textMatrix[5] - lastEnd[5];
+        float dx = (d * de - c * df) / det;
+        float dy = (a * df - b * de) / det;
+        float tolerance = SAME_LINE * Math.max(Math.abs(fontSize), 1e-3f);
+        return Math.abs(dy) <= tolerance && Math.abs(dx) <= tolerance;
+    }
+
+    /**
+     * Move past a string shown in a font.
+     *
+     * @param string the string
+     * @param font the font, if null the string isn't measured
+     */
+    void show(COSString string, PDFont font) {
+        float width = 0;
+        if (font != null) {
+            try {
+                InputStream in = new ByteArrayInputStream(string.getBytes());
+                while (in.available() > 0) {
+                    int before = in.available();
+                    int code = font.readCode(in);
+                    width += font.getWidth(code) / 1000 * fontSize + charSpacing;
+                    if (code == 32 && before - in.available() == 1) width += wordSpacing;
+                }
+            } catch (Exception ex) {
+                // measured as far as it could be
+            }
+        }
+        advance(width * horizontalScaling);
+    }
+
+    /**
+     * Move by a number of a TJ array.
+     *
+     * @param adjustment the number, in thousandths of the font size, positive moves back
+     * @return true if it opens a gap as wide as a space
+     */
+    boolean adjust(float adjustment) {
+        advance(-adjustment / 1000 * fontSize * horizontalScaling);
+        return adjustment <= SPACE_ADJUSTMENT;
+    }
+
+    private void advance(float tx) {
+        textMatrix[4] += tx * textMatrix[0];
+        textMatrix[5] += tx * textMatrix[1];
+        System.arraycopy(textMatrix, 0, lastEnd, 0, 6);
+        hasLast = true;
+    }
+
+    private void moveLine(float tx, float ty) {
+        float e = tx * lineMatrix[0] + ty * lineMatrix[2] + lineMatrix[4];
+        float f = tx * lineMatrix[1] + ty * lineMatrix[3] + lineMatrix[5];
+        lineMatrix[4] = e;
+        lineMatrix[5] = f;
+        System.arraycopy(lineMatrix, 0, textMatrix, 0, 6);
+    }
+
+    /**
+     * @return the operand some way before an operator (1 is the last), or a default if it isn't a number
+     */
+    private static float number(List<Object> tokens, int index, int back, float defaultValue) {
+        int i = index - back;
+        if (i < 0 || !(tokens.get(i) instanceof COSBase base) || !(base instanceof COSNumber number)) return defaultValue;
+        return number.floatValue();
+    }
+
+    private static void set(float[] matrix, float a, float b, float c, float d, float e, float f) {
+        matrix[0] = a;
+        matrix[1] = b;
+        matrix[2] = c;
+        matrix[3] = d;
+        matrix[4] = e;
+        matrix[5] = f;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Text folded for matching, with a map from every folded character back to the source it came from (a glyph
+ * of the text stripper, or a character of a decoded content stream block).  Words and terms are folded the same
+ * way, so one spelling of a word matches all its variants:
+ * <ul>
+ *     <li>compatibility forms are decomposed: ligatures (&#xFB01; is fi), full-width letters and digits,
+ *     super- and subscripts</li>
+ *     <li>diacritics are removed (&eacute; is e)</li>
+ *     <li>soft hyphens and zero-width characters are removed</li>
+ *     <li>everything is lower case</li>
+ * </ul>
+ * A match in the folded text covers source units [sourceStart(start), sourceEnd(end)), a match starting or
+ * ending in the middle of a ligature covers the whole ligature.
+ */
+class TextIndex {
+
+    private final String text; // the folded text
+    private final int[] sourceStart; // per folded character, the first source unit it came from
+    private final int[] sourceEnd; // and the source unit after the last
+
+    // constructor
+    private TextIndex(String text, int[] sourceStart, int[] sourceEnd) {
+        this.text = text;
+        this.sourceStart = sourceStart;
+        this.sourceEnd = sourceEnd;
+    }
+
+    /**
+     * Index a piece of text, the source units are its characters.
+     *
+     * @param source the text
+     * @return the folded text
+     */
+    static TextIndex of(CharSequence source) {
+        Builder builder = new Builder(source.length());
+        int i = 0;
+        while (i < source.length()) {
+            int codePoint = Character.codePointAt(source, i);
+            int next = i + Character.charCount(codePoint);
+            builder.fold(codePoint, i, next);
+            i = next;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Index a sequence of units (the unicode of each glyph), each unit can be several characters.
+     *
+     * @param text the text of all units
+     * @param unitStart where each unit starts in the text, unit u is text[unitStart[u], unitStart[u + 1])
+     * @param units the number of units
+     * @return the folded text
+     */
+    static TextIndex ofUnits(CharSequence text, int[] unitStart, int units) {
+        Builder builder = new Builder(text.length());
+        for (int u = 0; u < units; u++) {
+            int i = unitStart[u];
+            while (i < unitStart[u + 1]) {
+                int codePoint = Character.codePointAt(text, i);
+                builder.fold(codePoint, u, u + 1);
+                i += Character.charCount(codePoint);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Fold a word or term for matching against an index.
+     *
+     * @param word the word
+     * @return the folded word
+     */
+    static String fold(CharSequence word) {
+        return of(word).text;
+    }
+
+    /**
+     * @return the folded text
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @param start the index of the first folded character of a match
+     * @return the first source unit of the match
+     */
+    int sourceStart(int start) {
+        return sourceStart[start];
+    }
+
+    /**
+     * @param end the index after the last folded character of a match
+     * @return the source unit after the last of the match
+     */
+    int sourceEnd(int end) {
+        return sourceEnd[end - 1];
+    }
+
+    /**
+     * folds code points one at a time, keeping track of their source
+     */
+    private static class Builder {
+        private final StringBuilder text;
+        private int[] sourceStart;
+        private int[] sourceEnd;
+
+        Builder(int capacity) {
+            text = new StringBuilder(capacity);
+            sourceStart = new int[Math.max(16, capacity)];
+            sourceEnd = new int[Math.max(16, capacity)];
+        }
+
+        void fold(int codePoint, int start, int end) {
+            // the common case, plain ASCII, doesn't need the normalizer
+            if (codePoint < 0x80) {
+                append((char) Character.toLowerCase(codePoint), start, end);
+                return;
+            }
+            if (isIgnored(codePoint)) return;
+            String decomposed = Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFKD);
+            int i = 0;
+            while (i < decomposed.length()) {
+                int c = decomposed.codePointAt(i);
+                i += Character.charCount(c);
+                if (Character.getType(c) == Character.NON_SPACING_MARK || isIgnored(c)) continue;
+                for (char lower : Character.toChars(Character.toLowerCase(c))) {
+                    append(lower, start, end);
+                }
+            }
+        }
+
+        private void append(char c, int start, int end) {
+            int length = text.length();
+            if (length == sourceStart.length) {
+                sourceStart = Arrays.copyOf(sourceStart, length * 2);
+                sourceEnd = Arrays.copyOf(sourceEnd, length * 2);
+            }
+            text.append(c);
+            sourceStart[length] = start;
+            sourceEnd[length] = end;
+        }
+
+        TextIndex build() {
+            return new TextIndex(text.toString(), sourceStart, sourceEnd);
+        }
+    }
+
+    /**
+     * soft hyphens, zero-width spaces and joiners, and byte order marks are invisible: they're left out
+     */
+    private static boolean isIgnored(int codePoint) {
+        return codePoint == 0x00AD || (codePoint >= 0x200B && codePoint <= 0x200D) || codePoint == 0x2060 || codePoint == 0xFEFF;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The result of a {@link RedactionVerifier} run: passed if no redacted word was found in any content stream and
+ * every image region under a redaction area is fully masked.
+ */
+public class VerificationReport {
+
+    public enum FailureType {
+        TEXT,  // a redacted word is still in a content stream
+        IMAGE  // an image region under a redaction area isn't fully masked
+    }
+
+    /**
+     * one thing that survived redaction
+     */
+    public static class Failure {
+        private final int page; // 1-based page number
+        private final FailureType type;
+        private final String detail;
+
+        Failure(int page, FailureType type, String detail) {
+            this.page = page;
+            this.type = type;
+            this.detail = detail;
+        }
+
+        public int getPage() { return page; }
+        public FailureType getType() { return type; }
+        public String getDetail() { return detail; }
+
+        @Override
+        public String toString() {
+            return "page " + page + " " + type + ": " + detail;
+        }
+    }
+
+    private final List<Failure> failures = new ArrayList<>();
+    private int pagesChecked = 0;
+    private int imagesChecked = 0;
+
+    // constructor
+    VerificationReport() {
+    }
+
+    /**
+     * @return true if nothing survived redaction
+     */
+    public synchronized boolean isPassed() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return the failures in page order
+     */
+    public synchronized List<Failure> getFailures() {
+        List<Failure> list = new ArrayList<>(failures);
+        list.sort(Comparator.comparingInt(Failure::getPage));
+        return list;
+    }
+
+    public synchronized int getPagesChecked() { return pagesChecked; }
+    public synchronized int getImagesChecked() { return imagesChecked; }
+
+    synchronized void addFailure(int page, FailureType type, String detail) {
+        failures.add(new Failure(page, type, detail));
+    }
+
+    synchronized void pageChecked() { pagesChecked++; }
+    synchronized void imageChecked() { imagesChecked++; }
+
+    @Override
+    public synchronized String toString() {
+        return (failures.isEmpty() ? "passed" : "failed (" + failures.size() + " failures)") +
+                ", " + pagesChecked + " pages, " + imagesChecked + " images checked";
+    }
+}
@@ -11,6 +11,8 @@
 
 package nz.peter.pdfredaction;
 
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -20,6 +22,8 @@ import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,91 +31,144 @@ import java.util.regex.Pattern;
  * Internal utility to find the physical bounding boxes of target words.
  */
 class WordFinder extends PDFTextStripper {
+    // compiled patterns shared by all instances
+    private static final int MAX_CACHED_PATTERNS = 100_000;
+    private static final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+
     private final PDPage page;
     private final List<Pattern> targetPatterns = new ArrayList<>();
     private final List<Rectangle2D> foundBoundingBoxes = new ArrayList<>();
+    private final GlyphIndex glyphs = new GlyphIndex(); // the glyphs of the current page
+    private BudgetTracker budgetTracker = null; // optional resource limits
+    private TermDictionary dictionary = null; // optional compiled term list
+    private PageListener pageListener = null; // optional, sees the glyphs of every page
+
+    /**
+     * receives the glyphs of each page, before they're matched
+     */
+    interface PageListener {
+        void page(GlyphIndex glyphs, float cropWidth, float cropHeight, int rotation) throws IOException;
+    }
 
     // constructor
     public WordFinder(PDPage page, List<String> targetWords) {
         super();
-        setSortByPosition(true); // Mandatory for rotated pages
+        setSortByPosition(true); // Mandatory for rotated pages, GlyphIndex orders the glyphs the same way
         this.page = page;
 
-        // Pre-compile regex patterns with word boundaries (\b) and case insensitivity
+        // Pre-compiled regex patterns with word boundaries (\b) and case insensitivity
+        if (targetWords == null) return;
         for (String word : targetWords) {
             if (word != null && !word.trim().isEmpty()) {
-                targetPatterns.add(Pattern.compile("(?<!\\w)" + Pattern.quote(word) + "(?!\\w)", Pattern.CASE_INSENSITIVE));
+                targetPatterns.add(compile(word));
             }
         }
     }
 
+    /**
+     * Compiles (or fetches from the cache) the pattern for a word.  WordFinder is created for every
+     * page, so without the cache every word would be recompiled on every page of every document.
+     *
+     * @param word the word to look for
+     * @return a case-insensitive pattern matching the folded word (see {@link TextIndex}) on word boundaries
+     */
+    static Pattern compile(String word) {
+        Pattern pattern = patternCache.get(word);
+        if (pattern == null) {
+            // keep the cache bounded for long-running processes with ever-changing word lists
+            if (patternCache.size() >= MAX_CACHED_PATTERNS) {
+                patternCache.clear();
+            }
+            pattern = Pattern.compile("(?<!\\w)" + Pattern.quote(TextIndex.fold(word)) + "(?!\\w)", Pattern.CASE_INSENSITIVE);
+            patternCache.put(word, pattern);
+        }
+        return pattern;
+    }
+
 
     /**
-     * Overrides the base implementation to process text and identify bounding boxes for specific patterns.
-     * Scans the provided text for target patterns and calculates the bounding boxes corresponding
-     * to the matched portions on the page.
+     * Records the geometry of each glyph in the page's {@link GlyphIndex} instead of keeping the position
+     * object, as the base class would for sorting.
+     *
+     * @param text the glyph
+     */
+    @Override
+    protected void processTextPosition(TextPosition text) {
+        glyphs.add(text);
+    }
+
+    /**
+     * Overrides the base implementation, which writes the page's text, to find the target patterns (and the
+     * terms of the dictionary) a line at a time, in reading order, and box the glyphs of each match.
      *
-     * @param text the text string being written, potentially containing target patterns
-     * @param textPositions the list of {@link TextPosition} objects corresponding to the characters
-     *                      in the text, used for determining the coordinates and dimensions
-     *                      of the matches
      * @throws IOException if an error occurs during processing
      */
     @Override
-    protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
-        if (text == null || textPositions == null) return;
-
-        for (Pattern pattern : targetPatterns) {
-            Matcher matcher = pattern.matcher(text);
-
-            while (matcher.find()) {
-                int index = matcher.start();
-                int endIndex = matcher.end() - 1; // Inclusive index of the last character
-
-                if (index < textPositions.size() && endIndex < textPositions.size()) {
-                    TextPosition firstChar = textPositions.get(index);
-                    TextPosition lastChar = textPositions.get(endIndex);
-
-                    float vX = firstChar.getXDirAdj();
-                    float vY = firstChar.getPageHeight() - firstChar.getYDirAdj();
-                    float vW = (lastChar.getXDirAdj() + lastChar.getWidthDirAdj()) - vX;
-                    float vH = firstChar.getHeightDir();
-
-                    // Add padding to the visual box before transformation so it scales correctly
-                    vX -= 1;
-                    vY -= 2;
-                    vW += 2;
-                    vH += 4;
-
-                    // 2. Convert to Native Unrotated Coordinates (Machine Space)
-                    PDRectangle cropBox = page.getCropBox();
-                    int rotation = page.getRotation();
-
-                    float nX = vX;
-                    float nY = vY;
-                    float nW = vW;
-                    float nH = vH;
-
-                    if (rotation == 90) {
-                        nX = cropBox.getWidth() - vY - vH;
-                        nY = vX;
-                        nW = vH;
-                        nH = vW;
-                    } else if (rotation == 180) {
-                        nX = cropBox.getWidth() - vX - vW;
-                        nY = cropBox.getHeight() - vY - vH;
-                    } else if (rotation == 270) {
-                        nX = vY;
-                        nY = cropBox.getHeight() - vX - vW;
-                        nW = vH;
-                        nH = vW;
-                    }
-
-                    foundBoundingBoxes.add(new Rectangle2D.Float(nX, nY, nW, nH));
+    protected void writePage() throws IOException {
+        PDRectangle cropBox = page.getCropBox();
+        float cropWidth = cropBox.getWidth();
+        float cropHeight = cropBox.getHeight();
+        int rotation = page.getRotation();
+
+        if (pageListener != null) {
+            pageListener.page(glyphs, cropWidth, cropHeight, rotation);
+        }
+        if (targetPatterns.isEmpty() && dictionary == null) {
+            glyphs.clear();
+            return;
+        }
+        glyphs.lines(line -> {
+            // match on the folded text of the glyphs themselves, one index for all patterns
+            TextIndex index = TextIndex.ofUnits(line.text, line.unitStart, line.units);
+            for (Pattern pattern : targetPatterns) {
+                Matcher matcher = pattern.matcher(index.getText());
+                while (matcher.find()) {
+                    addBoundingBox(line, index.sourceStart(matcher.start()), index.sourceEnd(matcher.end()) - 1,
+                            cropWidth, cropHeight, rotation);
                 }
             }
+            if (dictionary != null) {
+                dictionary.find(index.getText(), (start, end) -> addBoundingBox(line, index.sourceStart(start),
+                        index.sourceEnd(end) - 1, cropWidth, cropHeight, rotation));
+            }
+        });
+        glyphs.clear();
+    }
+
+    /**
+     * Adds the bounding box of a match, in unrotated page coordinates.
+     *
+     * @param line the line the match was found in
+     * @param unit the index of the first unit (glyph) of the match
+     * @param endUnit the inclusive index of the last unit of the match
+     */
+    private void addBoundingBox(GlyphIndex.Line line, int unit, int endUnit, float cropWidth, float cropHeight, int rotation) {
+        if (unit < line.units && endUnit < line.units) {
+            foundBoundingBoxes.add(glyphs.box(line.glyph[unit], line.glyph[endUnit], cropWidth, cropHeight, rotation));
         }
-        super.writeString(text, textPositions);
+    }
+
+    /**
+     * Checks the resource budget (if any) before each content stream operator is processed.
+     */
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        if (budgetTracker != null) {
+            budgetTracker.checkToken();
+        }
+        super.processOperator(operator, operands);
+    }
+
+    void setBudgetTracker(BudgetTracker budgetTracker) {
+        this.budgetTracker = budgetTracker;
+    }
+
+    void setDictionary(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    void setPageListener(PageListener pageListener) {
+        this.pageListener = pageListener;
     }
 
     public List<Rectangle2D> getFoundBoundingBoxes() {
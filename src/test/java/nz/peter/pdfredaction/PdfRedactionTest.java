@@ -12,23 +12,41 @@
 package nz.peter.pdfredaction;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.FontMapper;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.util.Matrix;
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -297,6 +315,1171 @@ class PdfRedactionTest {
         doc.close();
     }
 
+    @Test
+    public void testBudgetRejectsAndCancels() throws IOException {
+        try (PDDocument doc = createTextPdf(0, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+            // generous limits: completes
+            RedactionOptions options = new RedactionOptions();
+            options.setBudget(new RedactionBudget(60_000, 1_000_000, 1_000_000, 10));
+            RedactionResult result = redactor.redact(doc, List.of("CONFIDENTIAL"), null, false, options);
+            assertTrue(result.isComplete());
+            assertFalse(extractTextFromPDF(doc).contains("CONFIDENTIAL"));
+
+            // content stream larger than one byte: rejected before anything is touched
+            options.setBudget(new RedactionBudget(0, 0, 1, 0));
+            result = redactor.redact(doc, List.of("fox"), null, false, options);
+            assertEquals(RedactionResult.Outcome.REJECTED, result.getOutcome());
+            assertTrue(extractTextFromPDF(doc).contains("fox"));
+
+            // cancelled before we start
+            CancellationToken token = new CancellationToken();
+            token.cancel();
+            options.setBudget(null);
+            options.setCancellationToken(token);
+            result = redactor.redact(doc, List.of("fox"), null, false, options);
+            assertEquals(RedactionResult.Outcome.REJECTED, result.getOutcome());
+            assertEquals(0, result.getPagesProcessed());
+            assertTrue(extractTextFromPDF(doc).contains("fox"));
+        }
+    }
+
+    @Test
+    public void testFixedFontMapper() throws IOException {
+        FixedFontMapper mapper = new FixedFontMapper();
+        assertNotNull(mapper.getTrueTypeFont("SomeUnknownFont", null).getFont());
+        assertTrue(mapper.getTrueTypeFont("SomeUnknownFont", null).isFallback());
+        assertTrue(mapper.getCIDFont("SomeUnknownFont", null, null).isFallback());
+
+        // installed by the warm-up, even when the process was warmed up without it
+        FontMapper previous = FontMappers.instance();
+        try {
+            FontMappers.set(previous instanceof FixedFontMapper ? null : previous);
+            RedactionWarmUp.warmUp(false);
+            assertFalse(FontMappers.instance() instanceof FixedFontMapper);
+            RedactionWarmUp.warmUp(true);
+            assertTrue(FontMappers.instance() instanceof FixedFontMapper);
+        } finally {
+            FontMappers.set(previous);
+        }
+    }
+
+    @Test
+    public void testShardedRedaction() throws IOException {
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        List<String> myList = Arrays.asList("earthworks", "roofing", "external");
+
+        PDDocument original = Loader.loadPDF(bytes);
+        int numPages = original.getNumberOfPages();
+        assertTrue(numPages > 1);
+        original.close();
+
+        // each "node" redacts and extracts its own half of the document
+        int split = numPages / 2;
+        PDDocument node1 = Loader.loadPDF(bytes);
+        PDDocument node2 = Loader.loadPDF(bytes);
+        assertTrue(redactor.redact(node1, 1, split, myList, null, false, null).isComplete());
+        assertTrue(redactor.redact(node2, split + 1, numPages, myList, null, false, null).isComplete());
+        PDDocument shard1 = PdfShards.extractPages(node1, 1, split);
+        PDDocument shard2 = PdfShards.extractPages(node2, split + 1, numPages);
+        assertEquals(split, shard1.getNumberOfPages());
+
+        try (PDDocument merged = PdfShards.merge(List.of(shard1, shard2))) {
+            assertEquals(numPages, merged.getNumberOfPages());
+            String textAfter = extractTextFromPDF(merged);
+            for (String word : myList) {
+                assertFalse(textAfter.contains(word), "Word " + word + " should be removed from the PDF");
+            }
+        }
+        shard1.close();
+        shard2.close();
+        node1.close();
+        node2.close();
+    }
+
+    @Test
+    public void testMemoryBudget() throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+
+            BufferedImage bi = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+            PDImageXObject pdImage = LosslessFactory.createFromImage(doc, bi);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.drawImage(pdImage, 100, 100, 200, 100);
+            }
+
+            // raw RGB samples + two int rasters
+            long estimate = MemoryEstimator.estimatePage(page);
+            assertTrue(estimate >= 200 * 100 * 3 + 200 * 100 * 4 * 2);
+            assertEquals(estimate, MemoryEstimator.estimateDocument(doc));
+
+            // a budget smaller than the page still lets it through on its own
+            MemoryBudget budget = new MemoryBudget(64 * 1024);
+            RedactionOptions options = new RedactionOptions();
+            options.setMemoryBudget(budget);
+            RedactionResult result = redactor.redact(doc, null, List.of(new RectangleOnPage(1, 150, 150, 10, 10)), false, options);
+            assertTrue(result.isComplete());
+            assertEquals(64 * 1024, budget.getAvailableBytes());
+        }
+    }
+
+    @Test
+    public void testVerifier() throws IOException {
+        try (PDDocument doc = createTextPdf(0, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+            BufferedImage bi = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = bi.createGraphics();
+            g2d.setColor(Color.RED);
+            g2d.fillRect(0, 0, 200, 200);
+            g2d.dispose();
+            PDImageXObject pdImage = LosslessFactory.createFromImage(doc, bi);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, doc.getPage(0), PDPageContentStream.AppendMode.APPEND, true)) {
+                cs.drawImage(pdImage, 100, 100, 200, 200);
+            }
+
+            List<String> words = List.of("CONFIDENTIAL");
+            List<RectangleOnPage> areas = List.of(new RectangleOnPage(1, 175, 175, 50, 50));
+            RedactionVerifier verifier = new RedactionVerifier(2);
+
+            VerificationReport before = verifier.verify(doc, words, areas);
+            assertFalse(before.isPassed());
+            assertEquals(2, before.getFailures().size());
+
+            redactor.redact(doc, words, areas, false);
+            VerificationReport after = verifier.verify(doc, words, areas);
+            assertTrue(after.isPassed(), after.getFailures().toString());
+            assertEquals(1, after.getImagesChecked());
+        }
+
+        // the parallel version on a multi-page document
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        List<String> myList = Arrays.asList("earthworks", "roofing", "External");
+        RedactionVerifier verifier = new RedactionVerifier(4);
+        assertFalse(verifier.verify(bytes, myList, null).isPassed());
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            redactor.redact(doc, myList, null, false);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            VerificationReport report = verifier.verify(out.toByteArray(), myList, null);
+            assertTrue(report.isPassed(), report.getFailures().toString());
+            assertEquals(doc.getNumberOfPages(), report.getPagesChecked());
+        }
+    }
+
+    @Test
+    public void testTextBoundaries() throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(font, 12);
+                // on two lines, not "SmithJones"
+                cs.newLineAtOffset(100, 600);
+                cs.showText("Mr Smith");
+                cs.newLineAtOffset(0, -14);
+                cs.showText("Jones went");
+                // a kerning gap as wide as a space, not "BrownField"
+                cs.newLineAtOffset(0, -14);
+                cs.showTextWithPositioning(new Object[] {"Brown", -600f, "Field"});
+                // one word split by a detour of the text matrix that comes back to where it left off
+                cs.setTextMatrix(Matrix.getTranslateInstance(100, 500));
+                cs.showText("Ext");
+                cs.setTextMatrix(Matrix.getTranslateInstance(100, 530));
+                cs.newLineAtOffset(font.getStringWidth("Ext") / 1000 * 12, -30);
+                cs.showText("ernal works");
+                cs.endText();
+            }
+
+            List<String> words = List.of("Smith", "Brown", "External");
+            RedactionVerifier verifier = new RedactionVerifier();
+            VerificationReport before = verifier.verify(doc, words, null);
+            assertEquals(3, before.getFailures().size(), before.getFailures().toString());
+
+            redactor.redact(doc, words, null, false);
+            VerificationReport after = verifier.verify(doc, words, null);
+            assertTrue(after.isPassed(), after.getFailures().toString());
+            String text = extractTextFromPDF(doc);
+            assertTrue(text.contains("Jones went"));
+            assertTrue(text.contains("works"));
+        }
+    }
+
+    @Test
+    public void testBurnIn() throws IOException {
+        for (boolean mono : new boolean[] {false, true}) {
+            try (PDDocument doc = createTextPdf(90, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+                RedactionOptions options = new RedactionOptions();
+                options.setBurnInPages(Set.of(1));
+                options.setBurnInDpi(72);
+                options.setBurnInMono(mono);
+                options.setBurnInMemoryLimit(64 * 1024); // force several strips
+                options.setBurnInThreads(3);
+                RedactionResult result = redactor.redact(doc, List.of("CONFIDENTIAL"), null, false, options);
+                assertTrue(result.isComplete());
+                assertEquals(1, result.getPagesBurnedIn());
+
+                // no text left at all, the page is made of image strips and keeps its rotation
+                PDPage page = doc.getPage(0);
+                assertEquals(90, page.getRotation());
+                assertTrue(extractTextFromPDF(doc).trim().isEmpty());
+                int strips = 0;
+                for (COSName name : page.getResources().getXObjectNames()) {
+                    assertTrue(page.getResources().isImageXObject(name));
+                    strips++;
+                }
+                assertTrue(strips > 1);
+
+                // still a valid document after a save
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                doc.save(out);
+                try (PDDocument reloaded = Loader.loadPDF(out.toByteArray())) {
+                    assertEquals(1, reloaded.getNumberOfPages());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTransformedAndInlineImages() throws IOException {
+        try (PDDocument doc = createTextPdf(0, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+            BufferedImage bi = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = bi.createGraphics();
+            g2d.setColor(Color.RED);
+            g2d.fillRect(0, 0, 200, 200);
+            g2d.dispose();
+            PDImageXObject pdImage = LosslessFactory.createFromImage(doc, bi);
+
+            // a red 100x100 inline image, raw 8-bit RGB
+            byte[] data = new byte[100 * 100 * 3];
+            for (int i = 0; i < data.length; i += 3) data[i] = (byte) 255;
+            COSDictionary parameters = new COSDictionary();
+            parameters.setInt(COSName.W, 100);
+            parameters.setInt(COSName.H, 100);
+            parameters.setInt(COSName.BPC, 8);
+            parameters.setItem(COSName.CS, COSName.DEVICERGB);
+            PDInlineImage inlineImage = new PDInlineImage(parameters, data, null);
+
+            PDPage page = doc.getPage(0);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true)) {
+                // rotated 30 degrees around its centre (300, 500)
+                cs.saveGraphicsState();
+                Matrix matrix = Matrix.getTranslateInstance(300, 500);
+                matrix.rotate(Math.toRadians(30));
+                matrix.translate(-100, -100);
+                cs.transform(matrix);
+                cs.drawImage(pdImage, 0, 0, 200, 200);
+                cs.restoreGraphicsState();
+
+                cs.drawImage(inlineImage, 100, 100, 100, 100);
+            }
+
+            List<RectangleOnPage> areas = List.of(
+                    new RectangleOnPage(1, 275, 475, 50, 50),
+                    new RectangleOnPage(1, 125, 125, 50, 50));
+            RedactionVerifier verifier = new RedactionVerifier(1);
+            assertEquals(2, verifier.verify(doc, null, areas).getFailures().size());
+
+            redactor.redact(doc, null, areas, false);
+            VerificationReport report = verifier.verify(doc, null, areas);
+            assertTrue(report.isPassed(), report.getFailures().toString());
+            assertEquals(2, report.getImagesChecked());
+
+            // the rotated image is masked in its centre only
+            BufferedImage masked = null;
+            for (COSName name : page.getResources().getXObjectNames()) {
+                if (page.getResources().isImageXObject(name)) {
+                    masked = ((PDImageXObject) page.getResources().getXObject(name)).getImage();
+                }
+            }
+            assertNotNull(masked);
+            assertEquals(0, masked.getRGB(100, 100) & 0x00FFFFFF);
+            assertEquals(0x00FF0000, masked.getRGB(10, 10) & 0x00FFFFFF);
+
+            // and the inline image was rewritten in the content stream
+            BufferedImage inline = null;
+            for (Object token : new PDFStreamParser(page).parse()) {
+                if (token instanceof Operator op && "BI".equals(op.getName())) {
+                    inline = new PDInlineImage(op.getImageParameters(), op.getImageData(), page.getResources()).getImage();
+                }
+            }
+            assertNotNull(inline);
+            assertEquals(0, inline.getRGB(50, 50) & 0x00FFFFFF);
+            assertEquals(0x00FF0000, inline.getRGB(5, 5) & 0x00FFFFFF);
+        }
+    }
+
+    @Test
+    public void testInlineStencilMask() throws IOException {
+        // on its own, and after an empty inline image PDFBox doesn't draw, which must still be counted
+        for (String before : new String[] {"", "BI /W 1 /H 1 /BPC 8 /CS /G ID\nEI\n0 g\n"}) {
+            try (PDDocument doc = new PDDocument()) {
+                // a 16x16 stencil mask that paints everywhere (all bits 0), hex encoded, drawn 160x160 at (100, 100)
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                String content = before + "q 160 0 0 160 100 100 cm BI /IM true /W 16 /H 16 /BPC 1 /F /AHx ID\n"
+                        + "0".repeat(64) + ">\nEI Q\n";
+                org.apache.pdfbox.pdmodel.common.PDStream stream = new org.apache.pdfbox.pdmodel.common.PDStream(doc);
+                try (OutputStream out = stream.createOutputStream()) {
+                    out.write(content.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1));
+                }
+                page.setContents(stream);
+
+                // the left half of the image
+                redactor.redact(doc, null, List.of(new RectangleOnPage(1, 100, 100, 80, 160)), false);
+
+                byte[] data = null;
+                int inlineImages = 0;
+                for (Object token : new PDFStreamParser(page).parse()) {
+                    if (token instanceof Operator op && "BI".equals(op.getName())) {
+                        inlineImages++;
+                        PDInlineImage inline = new PDInlineImage(op.getImageParameters(), op.getImageData(), page.getResources());
+                        if (inline.getWidth() != 16) {
+                            assertNull(op.getImageParameters().getDictionaryObject(COSName.F)); // the empty one isn't rewritten
+                            continue;
+                        }
+                        assertTrue(inline.isStencil());
+                        try (InputStream in = inline.createInputStream()) {
+                            data = in.readAllBytes();
+                        }
+                    }
+                }
+                assertEquals(before.isEmpty() ? 1 : 2, inlineImages);
+                assertNotNull(data);
+                assertEquals(32, data.length);
+                // per row: the left 8 samples no longer paint, the right 8 still do
+                for (int y = 0; y < 16; y++) {
+                    assertEquals((byte) 0xFF, data[2 * y]);
+                    assertEquals(0, data[2 * y + 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedResourceCache() throws IOException {
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        List<String> myList = Arrays.asList("earthworks", "roofing", "External");
+
+        String expected;
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            redactor.redact(doc, myList, null, false);
+            expected = extractTextFromPDF(doc);
+        }
+
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            BoundedResourceCache cache = new BoundedResourceCache(1024 * 1024, 256 * 1024);
+            RedactionOptions options = new RedactionOptions();
+            options.setResourceCache(cache);
+            assertTrue(redactor.redact(doc, myList, null, false, options).isComplete());
+            assertEquals(expected, extractTextFromPDF(doc));
+
+            // fonts are shared by the pages, so they're found again
+            assertTrue(cache.getHits() > 0, cache.toString());
+            assertTrue(cache.getMisses() > 0, cache.toString());
+            assertTrue(cache.getXObjectBytes() <= cache.getMaxXObjectBytes());
+            assertTrue(cache.getFontBytes() <= cache.getMaxFontBytes());
+        }
+
+        // a cache too small for anything still works, it just never finds anything
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            BoundedResourceCache cache = new BoundedResourceCache(0, 0);
+            RedactionOptions options = new RedactionOptions();
+            options.setResourceCache(cache);
+            assertTrue(redactor.redact(doc, myList, null, false, options).isComplete());
+            assertEquals(expected, extractTextFromPDF(doc));
+            assertEquals(0, cache.getFontBytes());
+        }
+    }
+
+    @Test
+    public void testColumnarAreas() throws IOException {
+        // unsorted columns are sorted by page, keeping the order within a page
+        RedactionAreas areas = new RedactionAreas(
+                new int[] {3, 1, 3, 2, 1},
+                new float[] {30, 10, 31, 20, 11},
+                new float[] {0, 0, 0, 0, 0},
+                new float[] {5, 5, 5, 5, 5},
+                new float[] {5, 5, 5, 5, 5});
+        assertEquals(5, areas.size());
+        assertArrayEquals(new int[] {1, 2, 3}, areas.getPageNumbers());
+        assertEquals(2, areas.pageEnd(1) - areas.pageStart(1));
+        assertEquals(10, areas.getX(areas.pageStart(1)));
+        assertEquals(31, areas.getX(areas.pageStart(3) + 1));
+        assertEquals(areas.pageStart(7), areas.pageEnd(7));
+        assertThrows(IllegalArgumentException.class, () -> new RedactionAreas(new int[] {0}, new float[1], new float[1], new float[1], new float[1]));
+
+        // page numbers far beyond the number of areas are sorted without a table that large, order kept
+        RedactionAreas far = new RedactionAreas(
+                new int[] {Integer.MAX_VALUE, 2_000_000_000, Integer.MAX_VALUE, 1},
+                new float[] {1, 2, 3, 4}, new float[4], new float[4], new float[4]);
+        assertArrayEquals(new int[] {1, 2_000_000_000, Integer.MAX_VALUE}, far.getPageNumbers());
+        assertEquals(1, far.getX(far.pageStart(Integer.MAX_VALUE)));
+        assertEquals(3, far.getX(far.pageStart(Integer.MAX_VALUE) + 1));
+        assertEquals(4, far.getX(0));
+
+        // the buffer form survives a round trip
+        RedactionAreas copy = RedactionAreas.fromBuffer(areas.toBuffer());
+        assertEquals(areas.size(), copy.size());
+        for (int i = 0; i < areas.size(); i++) {
+            assertEquals(areas.getPage(i), copy.getPage(i));
+            assertEquals(areas.getX(i), copy.getX(i));
+        }
+
+        // the same redaction as with a list of areas
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        List<String> myList = Arrays.asList("earthworks", "roofing");
+        try (PDDocument listDoc = Loader.loadPDF(bytes); PDDocument columnDoc = Loader.loadPDF(bytes)) {
+            List<RectangleOnPage> rectangles = redactor.getRedactionRectangles(listDoc, myList);
+            RedactionAreas found = redactor.getRedactionAreas(columnDoc, myList);
+            assertFalse(rectangles.isEmpty());
+            assertEquals(rectangles.size(), found.size());
+
+            redactor.redact(listDoc, null, rectangles, false);
+            assertTrue(redactor.redactAreas(columnDoc, null, found, false, null).isComplete());
+            assertEquals(extractTextFromPDF(listDoc), extractTextFromPDF(columnDoc));
+        }
+    }
+
+    @Test
+    public void testTermDictionary() throws IOException {
+        Path file = Files.createTempFile("terms", ".dict");
+        try {
+            TermDictionary.compile(Arrays.asList("Earthworks", "roofing", " roofing ", "", "roof"), file);
+            TermDictionary dictionary = TermDictionary.open(file);
+            assertTrue(dictionary.contains("EARTHWORKS"));
+            assertTrue(dictionary.contains("roof"));
+            assertFalse(dictionary.contains("roo"));
+
+            // on word boundaries, every term starting at a position
+            List<String> found = new ArrayList<>();
+            String text = "Roofing and roof, not roofs or earthworksX";
+            dictionary.find(text, (start, end) -> found.add(text.substring(start, end)));
+            assertEquals(List.of("Roofing", "roof"), found);
+
+            // the same areas and the same result as the list of words
+            byte[] bytes = loadBinary("/saratoga.pdf");
+            List<String> myList = Arrays.asList("earthworks", "roofing");
+            try (PDDocument listDoc = Loader.loadPDF(bytes); PDDocument dictionaryDoc = Loader.loadPDF(bytes)) {
+                assertEquals(redactor.getRedactionRectangles(listDoc, myList).size(),
+                        redactor.getRedactionAreas(dictionaryDoc, null, dictionary).size());
+
+                RedactionOptions options = new RedactionOptions();
+                options.setDictionary(dictionary);
+                assertTrue(redactor.redact(dictionaryDoc, null, null, false, options).isComplete());
+                String text2 = extractTextFromPDF(dictionaryDoc).toLowerCase();
+                assertFalse(text2.contains("earthworks"));
+                assertFalse(text2.contains("roofing"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testPipeline() throws IOException, InterruptedException {
+        Path inputDirectory = Files.createTempDirectory("pipeline-in");
+        Path outputDirectory = Files.createTempDirectory("pipeline-out");
+        try {
+            byte[] bytes = loadBinary("/saratoga.pdf");
+            List<Path> inputs = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Path input = inputDirectory.resolve("doc" + i + ".pdf");
+                Files.write(input, bytes);
+                inputs.add(input);
+            }
+            Path broken = inputDirectory.resolve("broken.pdf");
+            Files.write(broken, "not a pdf".getBytes());
+            inputs.add(2, broken);
+
+            RedactionPipeline pipeline = new RedactionPipeline(2, 2, 2, 2, 1);
+            List<RedactionPipeline.DocumentResult> results =
+                    pipeline.process(inputs, outputDirectory, Arrays.asList("earthworks", "roofing"), null);
+            assertEquals(inputs.size(), results.size());
+
+            for (RedactionPipeline.DocumentResult result : results) {
+                if (result.getInput().equals(broken)) {
+                    assertFalse(result.isWritten());
+                    assertNotNull(result.getError());
+                    assertFalse(Files.exists(result.getOutput()));
+                } else {
+                    assertTrue(result.isWritten(), result.toString());
+                    assertTrue(result.getResult().isComplete());
+                    try (PDDocument doc = Loader.loadPDF(Files.readAllBytes(result.getOutput()))) {
+                        assertFalse(extractTextFromPDF(doc).toLowerCase().contains("earthworks"));
+                    }
+                }
+            }
+        } finally {
+            for (Path directory : List.of(inputDirectory, outputDirectory)) {
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList()) Files.delete(file);
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineSurvivesErrors() throws IOException {
+        Path inputDirectory = Files.createTempDirectory("pipeline-in");
+        Path outputDirectory = Files.createTempDirectory("pipeline-out");
+        try {
+            byte[] bytes = loadBinary("/saratoga.pdf");
+            List<Path> inputs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Path input = inputDirectory.resolve("doc" + i + ".pdf");
+                Files.write(input, bytes);
+                inputs.add(input);
+            }
+
+            // the first document to be sanitised runs out of memory, the rest are written
+            java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+            RedactionOptions options = new RedactionOptions();
+            options.setSanitiser(new DocumentSanitiser(Set.of(DocumentSanitiser.Category.INFO)) {
+                @Override
+                public SanitiserReport sanitise(PDDocument document) {
+                    if (failed.compareAndSet(false, true)) throw new OutOfMemoryError("a very big scan");
+                    return super.sanitise(document);
+                }
+            });
+            RedactionPipeline pipeline = new RedactionPipeline(1, 2, 1, 1, 1);
+            List<RedactionPipeline.DocumentResult> results = assertTimeoutPreemptively(java.time.Duration.ofMinutes(2),
+                    () -> pipeline.process(inputs, outputDirectory, List.of("earthworks"), options));
+            assertEquals(1, results.stream().filter(result -> result.getError() instanceof OutOfMemoryError).count());
+            assertEquals(3, results.stream().filter(RedactionPipeline.DocumentResult::isWritten).count());
+
+            // two inputs that would write the same output
+            Path other = Files.createDirectory(inputDirectory.resolve("other"));
+            Path clash = Files.write(other.resolve("doc0.pdf"), bytes);
+            assertThrows(IllegalArgumentException.class,
+                    () -> pipeline.process(List.of(inputs.get(0), clash), outputDirectory, List.of("earthworks"), null));
+            Files.delete(clash);
+            Files.delete(other);
+        } finally {
+            for (Path directory : List.of(inputDirectory, outputDirectory)) {
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList()) Files.delete(file);
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+
+    @Test
+    public void testRegionPreview() throws IOException {
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        List<String> myList = Arrays.asList("earthworks", "roofing");
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            RedactionAreas boxes = redactor.getRedactionAreas(doc, myList);
+            redactor.redact(doc, myList, null, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+
+            RegionPreviewer previewer = new RegionPreviewer(50, 10, "png", 4);
+            List<RegionPreviewer.Preview> previews = previewer.preview(out.toByteArray(), boxes);
+            assertEquals(boxes.size(), previews.size());
+            for (int i = 0; i < previews.size(); i++) {
+                RegionPreviewer.Preview preview = previews.get(i);
+                assertEquals(i, preview.getBoxIndex());
+                assertEquals(boxes.getPage(i), preview.getPage());
+                BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(preview.getImage()));
+                assertNotNull(thumbnail);
+                // the box and its margin at 50 dpi
+                assertEquals(Math.ceil((boxes.getWidth(i) + 20) * 50 / 72f), thumbnail.getWidth(), 2);
+            }
+        }
+
+        // thumbnails are turned like the page: text running across the unrotated page runs down a page rotated 90
+        try (PDDocument doc = createTextPdf(90, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+            RedactionAreas boxes = new RedactionAreas(new int[] {1}, new float[] {200}, new float[] {395}, new float[] {80}, new float[] {17});
+            List<RegionPreviewer.Preview> previews = new RegionPreviewer(72, 2, "jpg", 1).preview(doc, boxes);
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(previews.get(0).getImage()));
+            assertEquals(21, thumbnail.getWidth(), 1);
+            assertEquals(84, thumbnail.getHeight(), 1);
+            assertEquals(90, doc.getPage(0).getRotation());
+        }
+    }
+
+    @Test
+    public void testFoldedMatching() throws IOException {
+        // ligatures, full-width forms, diacritics and soft hyphens fold away, mapped back to their source
+        TextIndex index = TextIndex.of("\uFB01nal \uFF23\uFF41\uFF46\u00E9 ex\u00ADternal");
+        assertEquals("final cafe external", index.getText());
+        assertEquals(0, index.sourceStart(1)); // the i of the ligature
+        assertEquals(1, index.sourceEnd(2));
+        int start = index.getText().indexOf("external");
+        assertEquals(10, index.sourceStart(start));
+        assertEquals(19, index.sourceEnd(start + "external".length()));
+
+        // one spelling of each word redacts all its variants, found and scrubbed
+        try (PDDocument doc = createTextPdf(0, "The Caf\u00C9 report by Zo\u00EB is ex\u00ADternal.")) {
+            List<String> words = List.of("cafe", "zoe", "external");
+            assertEquals(3, redactor.getRedactionRectangles(doc, words).size());
+            redactor.redact(doc, words, null, false);
+            String text = extractTextFromPDF(doc);
+            assertTrue(text.contains("report by"), text);
+            assertFalse(text.contains("Caf"), text);
+            assertFalse(text.contains("Zo"), text);
+            assertFalse(text.contains("ternal"), text);
+        }
+    }
+
+    @Test
+    public void testGlyphIndex() throws IOException {
+        // a line drawn out of order, with a gap for a space, and a word drawn twice (fake bold)
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(font, 12);
+                cs.newLineAtOffset(240, 400);
+                cs.showText("world");
+                cs.newLineAtOffset(-40, 0);
+                cs.showText("hello");
+                cs.newLineAtOffset(0, -20);
+                cs.showText("top secret");
+                cs.newLineAtOffset(0.3f, 0);
+                cs.showText("top secret");
+                cs.endText();
+            }
+
+            List<RectangleOnPage> boxes = redactor.getRedactionRectangles(doc, List.of("hello world", "secret"));
+            assertEquals(2, boxes.size());
+            assertEquals(199, boxes.get(0).getX(), 1);
+            assertTrue(boxes.get(0).getX() + boxes.get(0).getWidth() > 240 + font.getStringWidth("world") * 12 / 1000);
+        }
+
+        // the sort is stable
+        int[] order = {5, 3, 1, 4, 2, 0};
+        GlyphIndex.sort(order, 0, order.length, (a, b) -> Integer.compare(a / 2, b / 2));
+        assertArrayEquals(new int[] {1, 0, 3, 2, 5, 4}, order);
+    }
+
+    @Test
+    public void testParallelDeflater() throws Exception {
+        try (ParallelDeflater deflater = new ParallelDeflater(4, 6, 32 * 1024)) {
+            // several blocks, joined into one stream any inflater reads (and checks the checksum of)
+            byte[] data = new byte[300_000];
+            java.util.Random random = new java.util.Random(42);
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i % 251 < 200 ? 'a' + i % 7 : random.nextInt());
+            }
+            byte[] compressed = deflater.deflate(data);
+            assertTrue(compressed.length < data.length);
+            java.util.zip.Inflater inflater = new java.util.zip.Inflater();
+            inflater.setInput(compressed);
+            byte[] inflated = new byte[data.length + 1];
+            assertEquals(data.length, inflater.inflate(inflated));
+            assertTrue(inflater.finished());
+            inflater.end();
+            assertArrayEquals(data, Arrays.copyOf(inflated, data.length));
+
+            java.util.zip.Adler32 first = new java.util.zip.Adler32();
+            first.update(data, 0, 1000);
+            java.util.zip.Adler32 second = new java.util.zip.Adler32();
+            second.update(data, 1000, data.length - 1000);
+            java.util.zip.Adler32 whole = new java.util.zip.Adler32();
+            whole.update(data);
+            assertEquals(whole.getValue(), ParallelDeflater.combineAdler(first.getValue(), second.getValue(), data.length - 1000));
+
+            // an image with predictors (and alpha) decodes to the same pixels
+            try (PDDocument doc = new PDDocument()) {
+                BufferedImage image = new BufferedImage(300, 400, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        image.setRGB(x, y, ((x + y) % 256) << 24 | x << 16 | (y % 256) << 8 | (x * y) % 256);
+                    }
+                }
+                PDImageXObject encoded = deflater.createImage(doc, image);
+                BufferedImage decoded = encoded.getImage();
+                BufferedImage alpha = encoded.getSoftMask().getImage();
+                for (int y = 0; y < image.getHeight(); y += 7) {
+                    for (int x = 0; x < image.getWidth(); x += 3) {
+                        assertEquals(image.getRGB(x, y) & 0xFFFFFF, decoded.getRGB(x, y) & 0xFFFFFF);
+                        assertEquals(image.getRGB(x, y) >>> 24, alpha.getRGB(x, y) & 0xFF);
+                    }
+                }
+            }
+
+            // and redaction uses it for the content stream
+            try (PDDocument doc = createTextPdf(0, "The secret code is 42")) {
+                RedactionOptions options = new RedactionOptions();
+                options.setDeflater(deflater);
+                redactor.redact(doc, List.of("secret"), null, false, options);
+                assertFalse(extractTextFromPDF(doc).contains("secret"));
+            }
+        }
+    }
+
+    @Test
+    public void testCorpusBenchmark() throws IOException {
+        Path corpus = Files.createTempDirectory("corpus");
+        try {
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                try (PDDocument doc = createTextPdf(i * 90, "Document " + i + " is secret")) {
+                    Path file = corpus.resolve("doc" + i + ".pdf");
+                    doc.save(file.toFile());
+                    files.add(file);
+                }
+            }
+            Path broken = corpus.resolve("broken.pdf");
+            Files.writeString(broken, "not a pdf");
+            files.add(broken);
+
+            CorpusBenchmark.Report report = new CorpusBenchmark(2, 1).run(files, List.of("secret"), null);
+            assertEquals(5, report.getDocuments().size());
+            assertEquals(1, report.getFailures());
+            assertEquals(4, report.getPages());
+            assertEquals(0, report.getDocuments().get(0).getStageNanos(CorpusBenchmark.Stage.LOCATE));
+            assertTrue(report.getBytesOut() > 0);
+            assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(99));
+            assertTrue(report.getPeakHeapBytes() > 0);
+
+            String csv = report.toCsv();
+            assertEquals(6, csv.split("\n").length);
+            assertTrue(csv.startsWith("file,status,pages,boxes,bytes_in,bytes_out,total_ms,load_ms,locate_ms,redact_ms,save_ms"));
+            String json = report.toJson();
+            assertTrue(json.contains("\"documents\": 5"), json);
+            assertTrue(json.contains("\"p99\""), json);
+
+            // locating on its own
+            CorpusBenchmark.Report located = new CorpusBenchmark(2, 0, true).run(files, List.of("secret"), null);
+            assertEquals(1, located.getDocuments().get(0).getBoxes());
+            assertTrue(located.getDocuments().get(0).getStageNanos(CorpusBenchmark.Stage.LOCATE) > 0);
+            assertEquals(0, located.getBytesOut());
+
+            // an Error on one document is recorded, the run goes on
+            RedactionOptions failing = new RedactionOptions();
+            failing.setSanitiser(new DocumentSanitiser(Set.of(DocumentSanitiser.Category.INFO)) {
+                @Override
+                public SanitiserReport sanitise(PDDocument document) {
+                    throw new OutOfMemoryError("test");
+                }
+            });
+            CorpusBenchmark.Report errors = new CorpusBenchmark(2, 0).run(files, List.of("secret"), failing);
+            assertEquals(5, errors.getFailures());
+            assertTrue(errors.getDocuments().get(0).getStatus().startsWith("OutOfMemoryError"));
+
+            assertEquals(30, CorpusBenchmark.percentile(new long[] {50, 10, 30, 20, 40}, 50));
+            assertEquals(50, CorpusBenchmark.percentile(new long[] {50, 10, 30, 20, 40}, 99));
+        } finally {
+            try (java.util.stream.Stream<Path> paths = Files.list(corpus)) {
+                for (Path path : paths.toList()) Files.delete(path);
+            }
+            Files.delete(corpus);
+        }
+    }
+
+    @Test
+    public void testCoveredAndHiddenImages() throws IOException {
+        try (PDDocument doc = createTextPdf(0, "A photo and a logo")) {
+            PDPage page = doc.getPage(0);
+            page.setCropBox(new PDRectangle(0, 0, 400, 600));
+            BufferedImage bi = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = bi.createGraphics();
+            g2d.setColor(Color.RED);
+            g2d.fillRect(0, 0, 200, 200);
+            g2d.dispose();
+            PDImageXObject photo = LosslessFactory.createFromImage(doc, bi);
+            PDImageXObject logo = LosslessFactory.createFromImage(doc, bi);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true)) {
+                cs.drawImage(photo, 120, 120, 50, 50);
+                // half outside the crop box
+                cs.drawImage(logo, 350, 500, 100, 100);
+            }
+
+            List<RectangleOnPage> areas = List.of(
+                    new RectangleOnPage(1, 100, 100, 100, 100), // all of the photo
+                    new RectangleOnPage(1, 410, 510, 30, 30));  // the logo, but off the visible page
+            redactor.redact(doc, null, areas, false);
+
+            List<PDImageXObject> images = new ArrayList<>();
+            for (COSName name : page.getResources().getXObjectNames()) {
+                if (page.getResources().isImageXObject(name)) {
+                    images.add((PDImageXObject) page.getResources().getXObject(name));
+                }
+            }
+            assertEquals(2, images.size());
+            // the photo is now a single black pixel, the logo wasn't touched
+            assertTrue(images.stream().anyMatch(image -> image.getWidth() == 1 && image.getHeight() == 1));
+            assertTrue(images.stream().anyMatch(image -> image.getCOSObject() == logo.getCOSObject()));
+            VerificationReport report = new RedactionVerifier(1).verify(doc, null, areas.subList(0, 1));
+            assertTrue(report.isPassed(), report.getFailures().toString());
+        }
+    }
+
+    @Test
+    public void testImagesMaskedInBands() throws IOException {
+        for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            BufferedImage bi = new BufferedImage(600, 400, type);
+            for (int y = 0; y < bi.getHeight(); y++) {
+                for (int x = 0; x < bi.getWidth(); x++) {
+                    bi.setRGB(x, y, 0xFF000000 | (128 + x % 100) << 16 | (100 + y % 150) << 8 | 200);
+                }
+            }
+            List<RectangleOnPage> areas = List.of(new RectangleOnPage(1, 180, 180, 60, 40));
+
+            // the same page redacted with the image decoded whole, and a band of rows at a time
+            BufferedImage[] results = new BufferedImage[2];
+            for (int pass = 0; pass < 2; pass++) {
+                try (PDDocument doc = createTextPdf(0, "A drawing")) {
+                    PDPage page = doc.getPage(0);
+                    PDImageXObject pdImage = LosslessFactory.createFromImage(doc, bi);
+                    try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true)) {
+                        cs.drawImage(pdImage, 100, 100, 300, 200);
+                    }
+                    RedactionOptions options = new RedactionOptions();
+                    options.setImageMemoryLimit(pass == 0 ? 0 : 50_000);
+                    redactor.redact(doc, null, areas, false, options);
+                    for (COSName name : page.getResources().getXObjectNames()) {
+                        if (page.getResources().isImageXObject(name)) {
+                            results[pass] = ((PDImageXObject) page.getResources().getXObject(name)).getImage();
+                        }
+                    }
+                    assertTrue(new RedactionVerifier(1).verify(doc, null, areas).isPassed());
+                }
+            }
+            assertEquals(0, results[1].getRGB(200, 200) & 0x00FFFFFF);
+            assertEquals(bi.getRGB(10, 10) & 0x00FFFFFF, results[1].getRGB(10, 10) & 0x00FFFFFF);
+            for (int y = 0; y < bi.getHeight(); y++) {
+                for (int x = 0; x < bi.getWidth(); x++) {
+                    assertEquals(results[0].getRGB(x, y), results[1].getRGB(x, y), "pixel " + x + "," + y);
+                }
+            }
+        }
+
+        // the span of a rotated box on a scanline
+        double[] diamond = {10, 0, 20, 10, 10, 20, 0, 10};
+        assertArrayEquals(new double[] {5, 15}, StripImageRedactor.span(diamond, 5), 1e-9);
+        assertNull(StripImageRedactor.span(diamond, 25));
+    }
+
+    @Test
+    public void testDocumentIndex() throws IOException {
+        Path directory = Files.createTempDirectory("index");
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        String hash = DocumentIndex.hash(bytes);
+        List<String> myList = Arrays.asList("Earthworks", "roofing", "general conditions", "no-such-word");
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            DocumentIndex built = DocumentIndex.forDocument(directory, hash, doc);
+            assertTrue(Files.exists(directory.resolve(hash + ".pdx")));
+            assertTrue(built.getTokenCount() > 0);
+
+            // read back from the file, with the same boxes as extracting the text again
+            DocumentIndex index = DocumentIndex.forDocument(directory, hash, doc);
+            assertNotSame(built, index);
+            assertEquals(hash, index.getHash());
+            assertEquals(doc.getNumberOfPages(), index.getPageCount());
+            assertTrue(index.matches(doc));
+            RedactionAreas expected = redactor.getRedactionAreas(doc, myList);
+            RedactionAreas found = index.find(myList, null);
+            assertFalse(found.isEmpty());
+            assertEquals(expected.size(), found.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getPage(i), found.getPage(i));
+                assertEquals(expected.getX(i), found.getX(i), 0.001);
+                assertEquals(expected.getY(i), found.getY(i), 0.001);
+                assertEquals(expected.getWidth(i), found.getWidth(i), 0.001);
+            }
+
+            // and the same redaction
+            RedactionOptions options = new RedactionOptions();
+            options.setDocumentIndex(index);
+            assertTrue(redactor.redact(doc, myList, null, false, options).isComplete());
+            String text = extractTextFromPDF(doc).toLowerCase();
+            assertFalse(text.contains("earthworks"));
+            assertFalse(text.contains("roofing"));
+            assertFalse(index.matches(doc)); // redacted, its content changed
+
+            // another document with as many pages isn't answered from the index
+            try (PDDocument other = new PDDocument()) {
+                for (int i = 0; i < index.getPageCount(); i++) {
+                    PDPage page = new PDPage();
+                    other.addPage(page);
+                    try (PDPageContentStream cs = new PDPageContentStream(other, page)) {
+                        cs.beginText();
+                        cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                        cs.newLineAtOffset(100, 300 + i);
+                        cs.showText("Earthworks on page " + (i + 1));
+                        cs.endText();
+                    }
+                }
+                assertFalse(index.matches(other));
+                assertTrue(redactor.redact(other, myList, null, false, options).isComplete());
+                assertFalse(extractTextFromPDF(other).toLowerCase().contains("earthworks"));
+            }
+
+            // nor is one made from the same template: same boxes, rotation and content length, other text
+            try (PDDocument first = createUncompressedTextPdf("Earthworks: 10 trucks");
+                 PDDocument second = createUncompressedTextPdf("Roofing: 20 tiles ok!")) {
+                DocumentIndex firstIndex = DocumentIndex.build(first, "");
+                assertEquals(PageClassifier.contentLength(first.getPage(0)), PageClassifier.contentLength(second.getPage(0)));
+                assertFalse(firstIndex.matches(second));
+                RedactionOptions templateOptions = new RedactionOptions();
+                templateOptions.setDocumentIndex(firstIndex);
+                assertTrue(redactor.redact(second, myList, null, false, templateOptions).isComplete());
+                assertFalse(extractTextFromPDF(second).toLowerCase().contains("roofing"));
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testFanOut() throws IOException {
+        byte[] bytes = loadBinary("/saratoga.pdf");
+        try (PDDocument doc = Loader.loadPDF(bytes)) {
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            RedactionAreas corner = RedactionAreas.fromList(List.of(new RectangleOnPage(1, 0, 0, 200, 200)));
+            List<RedactionResult> results = new RedactionFanOut(redactor).redact(doc, List.of(
+                    new RedactionFanOut.Profile("first", List.of("earthworks"), null, null, first),
+                    new RedactionFanOut.Profile("second", List.of("roofing"), corner, null, second)));
+            assertEquals(2, results.size());
+            assertTrue(results.get(0).isComplete());
+            assertTrue(results.get(1).isComplete());
+
+            // each output only has its own redactions, and the same text as redacting a fresh copy
+            try (PDDocument firstDoc = Loader.loadPDF(first.toByteArray());
+                 PDDocument secondDoc = Loader.loadPDF(second.toByteArray());
+                 PDDocument expected = Loader.loadPDF(bytes)) {
+                String firstText = extractTextFromPDF(firstDoc).toLowerCase();
+                assertFalse(firstText.contains("earthworks"));
+                assertTrue(firstText.contains("roofing"));
+                String secondText = extractTextFromPDF(secondDoc).toLowerCase();
+                assertTrue(secondText.contains("earthworks"));
+                assertFalse(secondText.contains("roofing"));
+
+                redactor.redact(expected, List.of("earthworks"), null, false);
+                assertEquals(extractTextFromPDF(expected), extractTextFromPDF(firstDoc));
+            }
+
+            // and the document itself is as it was
+            String text = extractTextFromPDF(doc).toLowerCase();
+            assertTrue(text.contains("earthworks"));
+            assertTrue(text.contains("roofing"));
+        }
+    }
+
+    @Test
+    public void testPageClassifier() throws IOException {
+        try (PDDocument doc = createTextPdf(0, "Born digital text")) {
+            // a scan: an image and no fonts, a page with only an inline image, and a blank page
+            BufferedImage bi = whiteImage(100, 100, BufferedImage.TYPE_INT_RGB);
+            PDPage scan = new PDPage();
+            doc.addPage(scan);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, scan)) {
+                cs.drawImage(LosslessFactory.createFromImage(doc, bi), 0, 0, 600, 800);
+            }
+            COSDictionary parameters = new COSDictionary();
+            parameters.setInt(COSName.W, 2);
+            parameters.setInt(COSName.H, 2);
+            parameters.setInt(COSName.BPC, 8);
+            parameters.setItem(COSName.CS, COSName.DEVICEGRAY);
+            PDPage inline = new PDPage();
+            doc.addPage(inline);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, inline)) {
+                cs.drawImage(new PDInlineImage(parameters, new byte[4], null), 100, 100, 100, 100);
+            }
+            doc.addPage(new PDPage());
+
+            assertEquals(PageClassifier.Kind.TEXT, PageClassifier.classify(doc.getPage(0)).getKind());
+            assertEquals(PageClassifier.Kind.IMAGES, PageClassifier.classify(doc.getPage(1)).getKind());
+            assertEquals(PageClassifier.Kind.IMAGES, PageClassifier.classify(doc.getPage(2)).getKind());
+            assertEquals(PageClassifier.Kind.EMPTY, PageClassifier.classify(doc.getPage(3)).getKind());
+            assertFalse(PageClassifier.containsInlineImage(new ByteArrayInputStream("BT /F1 12 Tf (BIG) Tj ET".getBytes())));
+            assertTrue(PageClassifier.containsInlineImage(new ByteArrayInputStream("q\nBI /W 1".getBytes())));
+
+            // words are only looked for on the text page, images only masked on the image pages
+            List<RectangleOnPage> areas = new ArrayList<>();
+            for (int pageNum = 1; pageNum <= 4; pageNum++) areas.add(new RectangleOnPage(pageNum, 0, 0, 50, 50));
+            RedactionResult result = redactor.redact(doc, List.of("digital"), areas, false, null);
+            assertTrue(result.isComplete());
+            assertEquals(1, result.getPages(PageClassifier.Kind.TEXT));
+            assertEquals(2, result.getPages(PageClassifier.Kind.IMAGES));
+            assertEquals(1, result.getPages(PageClassifier.Kind.EMPTY));
+            assertEquals(3, result.getTextPassesSkipped());
+            assertEquals(2, result.getImagePassesSkipped());
+            assertFalse(extractTextFromPDF(doc).contains("digital"));
+
+            // pages without boxes aren't scanned for inline images (the blank page has the black box drawn now)
+            result = redactor.redact(doc, null, List.of(new RectangleOnPage(2, 0, 0, 50, 50)), false, null);
+            assertEquals(3, result.getPages(PageClassifier.Kind.UNSCANNED));
+            assertEquals(1, result.getPages(PageClassifier.Kind.IMAGES));
+        }
+    }
+
+    @Test
+    public void testSoftMaskMaskedInBands() throws IOException {
+        BufferedImage bi = new BufferedImage(600, 400, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                bi.setRGB(x, y, 0x80000000 | (x % 200) << 16 | (y % 200) << 8 | 200);
+            }
+        }
+        try (PDDocument doc = createTextPdf(0, "A signature")) {
+            PDPage page = doc.getPage(0);
+            PDImageXObject pdImage = LosslessFactory.createFromImage(doc, bi);
+            assertNotNull(pdImage.getSoftMask());
+            pdImage.getCOSObject().setItem(COSName.METADATA, streamOf("<x:xmpmeta>the signer</x:xmpmeta>"));
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true)) {
+                cs.drawImage(pdImage, 100, 100, 300, 200);
+            }
+            RedactionOptions options = new RedactionOptions();
+            options.setImageMemoryLimit(50_000);
+            redactor.redact(doc, null, List.of(new RectangleOnPage(1, 180, 180, 60, 40)), false, options);
+
+            PDImageXObject masked = null;
+            for (COSName name : page.getResources().getXObjectNames()) {
+                if (page.getResources().isImageXObject(name)) {
+                    masked = (PDImageXObject) page.getResources().getXObject(name);
+                }
+            }
+            assertNotNull(masked);
+            assertNotSame(pdImage.getCOSObject(), masked.getCOSObject());
+            assertNull(masked.getCOSObject().getItem(COSName.METADATA));
+            // the soft mask was masked with the image: nothing of its shape is left under the box
+            PDImageXObject softMask = masked.getSoftMask();
+            assertNotNull(softMask);
+            assertNotSame(pdImage.getSoftMask().getCOSObject(), softMask.getCOSObject());
+            BufferedImage alpha = softMask.getImage();
+            assertEquals(0, alpha.getRaster().getSample(200, 200, 0));
+            assertEquals(0x80, alpha.getRaster().getSample(10, 10, 0));
+        }
+    }
+
+    @Test
+    public void testRasterMask() {
+        int[] types = {
+                BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+                BufferedImage.TYPE_USHORT_GRAY
+        };
+        java.awt.Rectangle area = new java.awt.Rectangle(3, 5, 17, 9); // not on byte boundaries for 1-bit rows
+        for (int type : types) {
+            BufferedImage expected = whiteImage(37, 23, type);
+            Graphics2D g2d = expected.createGraphics();
+            g2d.setColor(Color.BLACK);
+            g2d.fill(area);
+            g2d.dispose();
+
+            BufferedImage image = whiteImage(37, 23, type);
+            assertFalse(RasterMask.isFilled(image, area));
+            RasterMask.fill(image, area);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), image.getRGB(x, y), "type " + type + " at " + x + "," + y);
+                }
+            }
+            assertTrue(RasterMask.isFilled(image, area));
+            assertFalse(RasterMask.isFilled(image, new java.awt.Rectangle(2, 5, 17, 9)));
+            assertFalse(RasterMask.isFilled(image, new java.awt.Rectangle(3, 5, 18, 9)));
+        }
+
+        // the same pixels as Java2D for fractional coordinates
+        assertEquals(new java.awt.Rectangle(3, 4, 2, 1),
+                RasterMask.pixelBounds(new java.awt.geom.Rectangle2D.Double(2.6, 4.5, 2.2, 0.9)));
+    }
+
+    private static BufferedImage whiteImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+
+    @Test
+    public void testSanitiser() throws IOException {
+        for (boolean everything : new boolean[] {false, true}) {
+            try (PDDocument doc = createTextPdf(0, "The quick brown fox jumps over the CONFIDENTIAL fence.")) {
+                addLeakyExtras(doc);
+                RedactionOptions options = new RedactionOptions();
+                if (everything) options.setSanitiser(DocumentSanitiser.all());
+                RedactionResult result = redactor.redact(doc, List.of("CONFIDENTIAL"), null, false, options);
+                SanitiserReport report = result.getSanitiserReport();
+
+                COSDictionary catalog = doc.getDocumentCatalog().getCOSObject();
+                COSDictionary page = doc.getPage(0).getCOSObject();
+                assertNull(doc.getDocumentInformation().getAuthor());
+                assertNull(catalog.getDictionaryObject(COSName.METADATA));
+                assertEquals(1, report.getRemoved(DocumentSanitiser.Category.INFO));
+                assertEquals(1, report.getRemoved(DocumentSanitiser.Category.DOCUMENT_METADATA));
+                assertEquals(everything, catalog.getDictionaryObject(COSName.OPEN_ACTION) == null);
+                assertEquals(everything, page.getDictionaryObject(COSName.getPDFName("PieceInfo")) == null);
+                assertEquals(everything, page.getDictionaryObject(COSName.getPDFName("Thumb")) == null);
+                assertEquals(everything, page.getDictionaryObject(COSName.METADATA) == null);
+                assertEquals(everything, doc.getPage(0).getAnnotations().isEmpty());
+                COSDictionary names = catalog.getCOSDictionary(COSName.NAMES);
+                assertEquals(everything, names.getDictionaryObject(COSName.getPDFName("EmbeddedFiles")) == null);
+                assertEquals(everything, names.getDictionaryObject(COSName.JAVA_SCRIPT) == null);
+                if (everything) {
+                    assertEquals(2, report.getRemoved(DocumentSanitiser.Category.JAVASCRIPT));
+                    assertEquals(2, report.getRemoved(DocumentSanitiser.Category.EMBEDDED_FILES));
+                    assertEquals(1, report.getRemoved(DocumentSanitiser.Category.THUMBNAILS));
+                    assertTrue(report.getRemovedBytes(DocumentSanitiser.Category.EMBEDDED_FILES) >= 14, report.toString());
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                doc.save(out);
+                try (PDDocument reloaded = Loader.loadPDF(out.toByteArray())) {
+                    assertEquals(1, reloaded.getNumberOfPages());
+                }
+            }
+        }
+    }
+
+    /**
+     * everything a sanitiser can remove: information, metadata, JavaScript, attachments, thumbnails, page pieces
+     */
+    private static void addLeakyExtras(PDDocument doc) throws IOException {
+        doc.getDocumentInformation().setAuthor("Secret Author");
+        COSDictionary catalog = doc.getDocumentCatalog().getCOSObject();
+        catalog.setItem(COSName.METADATA, streamOf("<x:xmpmeta/>"));
+
+        COSDictionary openAction = new COSDictionary();
+        openAction.setItem(COSName.S, COSName.JAVA_SCRIPT);
+        openAction.setString(COSName.JS, "app.alert('hi')");
+        catalog.setItem(COSName.OPEN_ACTION, openAction);
+
+        COSDictionary embeddedFiles = new COSDictionary();
+        COSDictionary fileSpec = new COSDictionary();
+        COSDictionary ef = new COSDictionary();
+        ef.setItem(COSName.F, streamOf("secret payload"));
+        fileSpec.setItem(COSName.EF, ef);
+        embeddedFiles.setItem(COSName.NAMES, new COSArray(List.of(new COSString("a.txt"), fileSpec)));
+        COSDictionary names = new COSDictionary();
+        names.setItem(COSName.getPDFName("EmbeddedFiles"), embeddedFiles);
+        names.setItem(COSName.JAVA_SCRIPT, new COSDictionary());
+        catalog.setItem(COSName.NAMES, names);
+
+        PDPage page = doc.getPage(0);
+        page.getCOSObject().setItem(COSName.getPDFName("PieceInfo"), new COSDictionary());
+        page.getCOSObject().setItem(COSName.getPDFName("Thumb"), streamOf("thumbnail"));
+        page.getCOSObject().setItem(COSName.METADATA, streamOf("<x:xmpmeta/>"));
+        COSDictionary attachment = new COSDictionary();
+        attachment.setItem(COSName.TYPE, COSName.ANNOT);
+        attachment.setItem(COSName.SUBTYPE, COSName.getPDFName("FileAttachment"));
+        attachment.setItem(COSName.RECT, new PDRectangle(10, 10, 20, 20).getCOSArray());
+        page.getCOSObject().setItem(COSName.ANNOTS, new COSArray(List.of(attachment)));
+    }
+
+    private static COSStream streamOf(String text) throws IOException {
+        COSStream stream = new COSStream();
+        try (OutputStream out = stream.createOutputStream()) {
+            out.write(text.getBytes());
+        }
+        return stream;
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -349,6 +1532,24 @@ class PdfRedactionTest {
         return doc;
     }
 
+    /**
+     * a page of text with an unfiltered content stream, its length only depends on the length of the text
+     */
+    private PDDocument createUncompressedTextPdf(String text) throws IOException {
+        PDDocument doc = new PDDocument();
+        PDPage page = new PDPage();
+        doc.addPage(page);
+        PDResources resources = new PDResources();
+        COSName font = resources.add(new PDType1Font(Standard14Fonts.FontName.HELVETICA));
+        page.setResources(resources);
+        org.apache.pdfbox.pdmodel.common.PDStream content = new org.apache.pdfbox.pdmodel.common.PDStream(doc);
+        try (OutputStream out = content.createOutputStream()) {
+            out.write(("BT /" + font.getName() + " 12 Tf 200 400 Td (" + text + ") Tj ET").getBytes(java.nio.charset.StandardCharsets.ISO_8859_1));
+        }
+        page.setContents(content);
+        return doc;
+    }
+
     /**
      * Helper method to extract all text from a given in-memory PDDocument.
      */
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2026 by Rock de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package nz.peter.pdfredaction;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedactionServerTest {
+
+    @Test
+    public void testRedactOverHttp() throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = RedactionServerTest.class.getResourceAsStream("/saratoga.pdf")) {
+            assertNotNull(inputStream);
+            bytes = inputStream.readAllBytes();
+        }
+
+        RedactionServer server = new RedactionServer(List.of("earthworks"), null, 2, 2);
+        server.start("127.0.0.1", 0);
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getPort() + "/redact?word=roofing");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("application/pdf", connection.getContentType());
+
+            byte[] redacted;
+            try (InputStream in = connection.getInputStream()) {
+                redacted = in.readAllBytes();
+            }
+            try (PDDocument doc = Loader.loadPDF(redacted)) {
+                String text = new PDFTextStripper().getText(doc);
+                assertFalse(text.contains("earthworks"));
+                assertFalse(text.contains("roofing"));
+                assertTrue(text.contains("external"));
+            }
+
+            // not a PDF
+            HttpURLConnection bad = (HttpURLConnection) url.openConnection();
+            bad.setRequestMethod("POST");
+            bad.setDoOutput(true);
+            try (OutputStream out = bad.getOutputStream()) {
+                out.write("not a pdf".getBytes());
+            }
+            assertEquals(400, bad.getResponseCode());
+
+            // a PDF that loads but can't be redacted: its second Tf has a string for a font name
+            byte[] broken;
+            try (PDDocument doc = new PDDocument()) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                PDResources resources = new PDResources();
+                COSName font = resources.add(new PDType1Font(Standard14Fonts.FontName.HELVETICA));
+                page.setResources(resources);
+                PDStream content = new PDStream(doc);
+                try (OutputStream out = content.createOutputStream()) {
+                    out.write(("BT /" + font.getName() + " 12 Tf 100 700 Td (earthworks) Tj (F9) 12 Tf ( roofing) Tj ET").getBytes());
+                }
+                page.setContents(content);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                doc.save(out);
+                broken = out.toByteArray();
+            }
+            HttpURLConnection failed = (HttpURLConnection) url.openConnection();
+            failed.setRequestMethod("POST");
+            failed.setDoOutput(true);
+            try (OutputStream out = failed.getOutputStream()) {
+                out.write(broken);
+            }
+            assertEquals(500, failed.getResponseCode());
+            try (InputStream in = failed.getErrorStream()) {
+                assertTrue(new String(in.readAllBytes()).startsWith("redaction failed"));
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        // documents over the size limit, with a length or chunked
+        server = new RedactionServer(null, null, 1, 1);
+        server.setMaxRequestSize(1000);
+        server.start("127.0.0.1", 0);
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getPort() + "/redact?word=roofing");
+            for (boolean chunked : new boolean[] {false, true}) {
+                HttpURLConnection large = (HttpURLConnection) url.openConnection();
+                large.setRequestMethod("POST");
+                large.setDoOutput(true);
+                if (chunked) large.setChunkedStreamingMode(256);
+                else large.setFixedLengthStreamingMode(4000);
+                try (OutputStream out = large.getOutputStream()) {
+                    out.write(new byte[4000]);
+                }
+                assertEquals(413, large.getResponseCode());
+            }
+
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}